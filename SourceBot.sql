@@ -13,3 +13,77 @@ CREATE TABLE blogs (
   active            BOOLEAN NOT NULL DEFAULT TRUE
 );
 
+
+-- Terms each blog searches for posts, and terms it skips posts for
+CREATE TABLE search_inclusions (
+  id            SERIAL  NOT NULL PRIMARY KEY,
+  blog_id       INTEGER NOT NULL,
+  type          TEXT    NOT NULL,
+  term          TEXT    NOT NULL,
+  required_tags TEXT [],
+  post_type     TEXT,
+  post_select   TEXT,
+  sample_size   INTEGER,
+  active        BOOLEAN NOT NULL DEFAULT TRUE
+);
+
+CREATE TABLE search_exclusions (
+  id      SERIAL  NOT NULL PRIMARY KEY,
+  blog_id INTEGER NOT NULL,
+  type    TEXT    NOT NULL,
+  term    TEXT    NOT NULL,
+  active  BOOLEAN NOT NULL DEFAULT TRUE
+);
+
+-- Per blog spam rules, types are post_count, title (regex), tags (max tags), caption (max blogs sharing a caption) and
+-- domain (linked domain), blogs without any active rules use post_count 5 and the title "Без названия"
+CREATE TABLE spam_rules (
+  id      SERIAL  NOT NULL PRIMARY KEY,
+  blog_id UUID    NOT NULL,
+  type    TEXT    NOT NULL,
+  value   TEXT    NOT NULL,
+  active  BOOLEAN NOT NULL DEFAULT TRUE
+);
+
+-- Lookups of blogs posts are reblogged from, shared by all blogs for the spam checks
+CREATE TABLE source_blogs (
+  name       TEXT      NOT NULL PRIMARY KEY,
+  found      BOOLEAN   NOT NULL,
+  post_count INT       NOT NULL,
+  title      TEXT,
+  checked    TIMESTAMP NOT NULL
+);
+
+-- Notifies listening bots when a blog's config, inclusions or exclusions change, with a payload of "table:blog_id"
+CREATE OR REPLACE FUNCTION sourcebot_notify()
+  RETURNS TRIGGER AS $$
+DECLARE
+  changed RECORD;
+BEGIN
+  IF TG_OP = 'DELETE'
+  THEN
+    changed := OLD;
+  ELSE
+    changed := NEW;
+  END IF;
+  IF TG_TABLE_NAME = 'blogs'
+  THEN
+    PERFORM pg_notify('sourcebot_config', TG_TABLE_NAME || ':' || changed.id);
+  ELSE
+    PERFORM pg_notify('sourcebot_config', TG_TABLE_NAME || ':' || changed.blog_id);
+  END IF;
+  RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER blogs_notify AFTER INSERT OR UPDATE OR DELETE ON blogs
+FOR EACH ROW EXECUTE PROCEDURE sourcebot_notify();
+
+CREATE TRIGGER search_inclusions_notify AFTER INSERT OR UPDATE OR DELETE ON search_inclusions
+FOR EACH ROW EXECUTE PROCEDURE sourcebot_notify();
+
+CREATE TRIGGER search_exclusions_notify AFTER INSERT OR UPDATE OR DELETE ON search_exclusions
+FOR EACH ROW EXECUTE PROCEDURE sourcebot_notify();
+
+CREATE TRIGGER spam_rules_notify AFTER INSERT OR UPDATE OR DELETE ON spam_rules
+FOR EACH ROW EXECUTE PROCEDURE sourcebot_notify();
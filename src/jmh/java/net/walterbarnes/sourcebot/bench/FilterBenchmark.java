@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.bench;
+
+import com.tumblr.jumblr.types.*;
+import net.walterbarnes.sourcebot.search.ExclusionMatcher;
+import net.walterbarnes.sourcebot.search.filter.*;
+import net.walterbarnes.sourcebot.sim.PostGenerator;
+import net.walterbarnes.sourcebot.util.LongHashSet;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a page of search results through the filters every term uses, with a 500 term tag blacklist and 500k seen
+ * posts
+ * <p>
+ * {@code naiveExclusion} is the exclusion check the tag search used before the filters, checking every term against
+ * every text field one at a time, kept as the baseline for {@code exclusion}
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (value = 1, jvmArgsAppend = "-Xmx4g")
+public class FilterBenchmark
+{
+	@Param ({"10000", "100000", "1000000"})
+	public int posts;
+
+	@Param ({"500"})
+	public int terms;
+
+	private List<Post> corpus;
+	private List<String> blacklist;
+	private ExclusionMatcher matcher;
+	private Set<String> blogBlacklist;
+	private LongHashSet seen;
+	private String[] types;
+
+	@Setup
+	public void setup()
+	{
+		PostGenerator gen = new PostGenerator(42);
+		corpus = gen.posts(posts);
+		blacklist = gen.terms(terms);
+		matcher = new ExclusionMatcher(blacklist);
+		blogBlacklist = new HashSet<>(gen.blogs(50));
+		types = new String[]{"photo", "text", "quote"};
+
+		// Half the seen ids are taken from the corpus, the rest are ids the searches will never see
+		long[] ids = new PostGenerator(43).ids(250000);
+		seen = new LongHashSet(500000);
+		for (long id : ids) seen.add(id);
+		Random random = new Random(44);
+		for (int i = 0; i < 250000; i++) seen.add(corpus.get(random.nextInt(corpus.size())).getId());
+	}
+
+	@Benchmark
+	public long pipeline()
+	{
+		List<IPostFilter> filters = new ArrayList<>();
+		filters.add(new PostTypeFilter(types));
+		filters.add(new BlogBlacklistFilter(blogBlacklist));
+		filters.add(new SeenFilter(seen));
+		filters.add(new ExclusionFilter(matcher));
+		FilterPipeline pipeline = new FilterPipeline(filters);
+		for (Post post : corpus) pipeline.accept(post);
+		return pipeline.getAccepted();
+	}
+
+	@Benchmark
+	public void exclusion(Blackhole bh)
+	{
+		for (Post post : corpus) bh.consume(matcher.matches(post));
+	}
+
+	@Benchmark
+	public void naiveExclusion(Blackhole bh)
+	{
+		for (Post post : corpus) bh.consume(naiveMatches(post));
+	}
+
+	/**
+	 * The exclusion check from the old tag search, with no required tags, only null safe as generated posts may leave
+	 * fields unset
+	 */
+	private boolean naiveMatches(Post post)
+	{
+		for (String tag : blacklist)
+		{
+			if (post instanceof TextPost)
+			{
+				TextPost p = (TextPost) post;
+				if (contains(p.getTitle(), tag) || contains(p.getBody(), tag)) return true;
+			}
+			else if (post instanceof PhotoPost)
+			{
+				PhotoPost p = (PhotoPost) post;
+				if (contains(p.getCaption(), tag)) return true;
+			}
+			else if (post instanceof QuotePost)
+			{
+				QuotePost p = (QuotePost) post;
+				if (contains(p.getSource(), tag) || contains(p.getText(), tag)) return true;
+			}
+			else if (post instanceof LinkPost)
+			{
+				LinkPost p = (LinkPost) post;
+				if (contains(p.getTitle(), tag) || contains(p.getDescription(), tag)) return true;
+			}
+			else if (post instanceof ChatPost)
+			{
+				ChatPost p = (ChatPost) post;
+				if (contains(p.getTitle(), tag) || contains(p.getBody(), tag)) return true;
+				if (p.getDialogue() != null)
+				{
+					for (Dialogue line : p.getDialogue())
+					{
+						if (contains(line.getPhrase(), tag) || contains(line.getLabel(), tag) || contains(line.getName(), tag))
+						{ return true; }
+					}
+				}
+			}
+			else if (post instanceof AudioPost)
+			{
+				AudioPost p = (AudioPost) post;
+				if (contains(p.getCaption(), tag)) return true;
+			}
+			else if (post instanceof VideoPost)
+			{
+				VideoPost p = (VideoPost) post;
+				if (contains(p.getCaption(), tag)) return true;
+			}
+			else if (post instanceof AnswerPost)
+			{
+				AnswerPost p = (AnswerPost) post;
+				if (contains(p.getAnswer(), tag) || contains(p.getQuestion(), tag)) return true;
+			}
+			else if (post instanceof PostcardPost)
+			{
+				PostcardPost p = (PostcardPost) post;
+				if (contains(p.getBody(), tag)) return true;
+			}
+
+			if (post.getTags().contains(tag)) return true;
+		}
+		return false;
+	}
+
+	private static boolean contains(String text, String term)
+	{
+		return text != null && text.contains(term);
+	}
+
+	/**
+	 * Stands in for {@link SeenPostFilter}, which needs a blog config backed by the database
+	 */
+	private static class SeenFilter implements IPostFilter
+	{
+		private final LongHashSet seen;
+
+		private SeenFilter(LongHashSet seen)
+		{
+			this.seen = seen;
+		}
+
+		@Override
+		public String getName()
+		{
+			return "seen";
+		}
+
+		@Override
+		public int getCost()
+		{
+			return 2;
+		}
+
+		@Override
+		public boolean accept(Post post)
+		{
+			return !seen.contains(post.getId());
+		}
+	}
+}
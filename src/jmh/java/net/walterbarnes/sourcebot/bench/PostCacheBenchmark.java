@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.bench;
+
+import com.tumblr.jumblr.types.Post;
+import net.walterbarnes.sourcebot.sim.PostGenerator;
+import net.walterbarnes.sourcebot.tumblr.PostCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fills a post cache the way a tag search does, then takes posts back out of it
+ * <p>
+ * {@code expire} drops every post through {@link PostCache#validate()}, {@code removeThenValidate} removes half the
+ * posts by id first, as reblogs do, so validate has to skip and compact the removed entries. {@code remove} removes a
+ * fixed number of posts, so it can be compared with {@code oldRemove} on the cache {@link PostCache} replaced, whose
+ * remove scans every post. {@code oldExpire} is the baseline for {@code expire}.
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (value = 1, jvmArgsAppend = "-Xmx4g")
+public class PostCacheBenchmark
+{
+	// Posts taken out by remove and oldRemove, kept low as each one is a full scan of the old cache
+	private static final int REMOVES = 1000;
+
+	@Param ({"10000", "100000", "1000000"})
+	public int posts;
+
+	private List<Post> corpus;
+
+	@Setup
+	public void setup()
+	{
+		corpus = new PostGenerator(42).posts(posts);
+	}
+
+	@Benchmark
+	public int expire()
+	{
+		PostCache cache = new PostCache(-1, posts);
+		for (Post post : corpus) cache.addPost(post);
+		cache.validate();
+		return cache.size();
+	}
+
+	@Benchmark
+	public int removeThenValidate()
+	{
+		PostCache cache = new PostCache(60 * 60 * 1000, posts);
+		for (Post post : corpus) cache.addPost(post);
+		for (int i = 0; i < corpus.size(); i += 2) cache.remove(corpus.get(i).getId());
+		cache.validate();
+		return cache.size();
+	}
+
+	@Benchmark
+	public int oldExpire()
+	{
+		OldPostCache cache = new OldPostCache(-1);
+		for (Post post : corpus) cache.addPost(post);
+		cache.validate();
+		return cache.size();
+	}
+
+	@Benchmark
+	public int remove()
+	{
+		PostCache cache = new PostCache(60 * 60 * 1000, posts);
+		for (Post post : corpus) cache.addPost(post);
+		int step = corpus.size() / REMOVES;
+		for (int i = 0; i < corpus.size(); i += step) cache.remove(corpus.get(i).getId());
+		cache.validate();
+		return cache.size();
+	}
+
+	@Benchmark
+	public int oldRemove()
+	{
+		OldPostCache cache = new OldPostCache(60 * 60 * 1000);
+		for (Post post : corpus) cache.addPost(post);
+		int step = corpus.size() / REMOVES;
+		for (int i = 0; i < corpus.size(); i += step) cache.remove(corpus.get(i).getId());
+		cache.validate();
+		return cache.size();
+	}
+
+	@Benchmark
+	public int evict()
+	{
+		PostCache cache = new PostCache(60 * 60 * 1000, posts / 10);
+		for (Post post : corpus) cache.addPost(post);
+		cache.validate();
+		return cache.size();
+	}
+
+	/**
+	 * The post cache as it was before entries were indexed by id and expired in order, kept as the baseline
+	 */
+	private static class OldPostCache implements Iterable<Post>
+	{
+		private final Map<Post, Long> posts = new LinkedHashMap<>();
+		private final long cacheLife;
+
+		private OldPostCache(long cacheLife)
+		{
+			this.cacheLife = cacheLife;
+		}
+
+		public boolean addPost(Post post)
+		{
+			if (posts.containsKey(post)) return false;
+			posts.put(post, System.currentTimeMillis());
+			return true;
+		}
+
+		@SuppressWarnings ("UnusedReturnValue")
+		public boolean remove(long postId)
+		{
+			for (Post p : posts.keySet())
+			{
+				if (p.getId().equals(postId))
+				{
+					posts.remove(p);
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public void validate()
+		{
+			ArrayList<Post> set = new ArrayList<>(posts.keySet());
+			for (Post key : set)
+			{
+				if (System.currentTimeMillis() - posts.get(key) > cacheLife)
+				{
+					posts.remove(key);
+				}
+			}
+		}
+
+		public int size()
+		{
+			return posts.size();
+		}
+
+		@Override
+		public Iterator<Post> iterator()
+		{
+			return posts.keySet().iterator();
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.bench;
+
+import net.walterbarnes.sourcebot.sim.PostGenerator;
+import net.walterbarnes.sourcebot.util.LongHashSet;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looks up post ids in a blog's seen posts, comparing {@link LongHashSet} against the {@code List<Long>} it replaced,
+ * with a boxed {@code HashSet<Long>} as a middle ground
+ * <p>
+ * Each operation is a batch of lookups where about half the ids have been seen. The old code also read the whole list
+ * from the database on every search, which isn't counted here.
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MICROSECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+public class SeenPostBenchmark
+{
+	// Kept small, as every lookup in the list is a scan of the whole thing
+	private static final int LOOKUPS = 1000;
+
+	@Param ({"500000"})
+	public int seen;
+
+	private LongHashSet primitive;
+	private Set<Long> boxed;
+	private List<Long> list;
+	private long[] probes;
+
+	@Setup
+	public void setup()
+	{
+		long[] ids = new PostGenerator(42).ids(seen);
+		primitive = new LongHashSet(seen);
+		boxed = new HashSet<>(seen * 2);
+		list = new ArrayList<>(seen);
+		for (long id : ids)
+		{
+			primitive.add(id);
+			boxed.add(id);
+			list.add(id);
+		}
+
+		Random random = new Random(43);
+		probes = new long[LOOKUPS];
+		for (int i = 0; i < LOOKUPS; i++)
+		{
+			long id = ids[random.nextInt(ids.length)];
+			probes[i] = random.nextBoolean() ? id : id + 1;
+		}
+	}
+
+	@Benchmark
+	public int longHashSet()
+	{
+		int found = 0;
+		for (long id : probes)
+		{
+			if (primitive.contains(id)) found++;
+		}
+		return found;
+	}
+
+	@Benchmark
+	public int boxedSet()
+	{
+		int found = 0;
+		for (long id : probes)
+		{
+			if (boxed.contains(id)) found++;
+		}
+		return found;
+	}
+
+	@Benchmark
+	public int list()
+	{
+		int found = 0;
+		for (long id : probes)
+		{
+			if (list.contains(id)) found++;
+		}
+		return found;
+	}
+}
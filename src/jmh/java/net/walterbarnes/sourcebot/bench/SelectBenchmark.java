@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.bench;
+
+import com.github.onyxfoxdevelopment.collections.CollectionHelper;
+import com.tumblr.jumblr.types.Post;
+import net.walterbarnes.sourcebot.search.PostOrder;
+import net.walterbarnes.sourcebot.search.WeightedSampler;
+import net.walterbarnes.sourcebot.sim.PostGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks posts out of a blog's merged search results
+ * <p>
+ * {@code topK} and {@code weighted} are what the search thread does now, {@code fullSort} is the selection it used to
+ * do, sorting the whole result list with {@link CollectionHelper} and cutting it down, kept as the baseline
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (value = 1, jvmArgsAppend = "-Xmx4g")
+public class SelectBenchmark
+{
+	@Param ({"10000", "100000", "1000000"})
+	public int posts;
+
+	@Param ({"10", "100"})
+	public int picks;
+
+	private List<Post> corpus;
+	private Random random;
+
+	@Setup
+	public void setup()
+	{
+		corpus = new PostGenerator(42).posts(posts);
+		random = new Random(43);
+	}
+
+	@Benchmark
+	public List<Post> topK()
+	{
+		return PostOrder.TOP.select(corpus, picks);
+	}
+
+	@Benchmark
+	public Collection<Post> fullSort() throws InstantiationException, IllegalAccessException
+	{
+		return CollectionHelper.cutMaxLen(CollectionHelper.sortByCompare(corpus, NoteCount.class, true), picks);
+	}
+
+	@Benchmark
+	public List<Post> weighted()
+	{
+		WeightedSampler<Post> sampler = new WeightedSampler<>(random);
+		for (Post post : corpus) sampler.add(post, PostOrder.TOP.getWeight(post));
+		List<Post> out = new ArrayList<>(picks);
+		Post post;
+		while (out.size() < picks && (post = sampler.next()) != null) out.add(post);
+		return out;
+	}
+
+	/**
+	 * The note count comparator the old selection sorted with
+	 */
+	public static class NoteCount implements Comparator<Post>
+	{
+		@Override
+		public int compare(Post p, Post p1)
+		{
+			return p.getNoteCount().compareTo(p1.getNoteCount());
+		}
+	}
+}
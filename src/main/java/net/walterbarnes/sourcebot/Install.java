@@ -21,6 +21,7 @@ package net.walterbarnes.sourcebot;
 import com.github.onyxfoxdevelopment.cli.Prompt;
 import com.google.gson.JsonObject;
 import com.tumblr.jumblr.exceptions.JumblrException;
+import net.walterbarnes.sourcebot.config.ConfigListener;
 import net.walterbarnes.sourcebot.config.Configuration;
 import net.walterbarnes.sourcebot.tumblr.Tumblr;
 
@@ -28,6 +29,7 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -216,6 +218,22 @@ public class Install
 				"rb_id BIGINT NOT NULL" +
 				");");
 
+		PreparedStatement spamRulesCreate = conn.prepareStatement("CREATE TABLE IF NOT EXISTS spam_rules (" +
+				"id SERIAL PRIMARY KEY NOT NULL," +
+				"blog_id UUID NOT NULL," +
+				"type TEXT NOT NULL," +
+				"value TEXT NOT NULL," +
+				"active BOOLEAN NOT NULL DEFAULT TRUE" +
+				");");
+
+		PreparedStatement sourceBlogsCreate = conn.prepareStatement("CREATE TABLE IF NOT EXISTS source_blogs (" +
+				"name TEXT PRIMARY KEY NOT NULL," +
+				"found BOOLEAN NOT NULL," +
+				"post_count INTEGER NOT NULL," +
+				"title TEXT," +
+				"checked TIMESTAMP NOT NULL" +
+				");");
+
 		logger.info("Creating blogs table if it doesn't exist...");
 		blogsCreate.execute();
 		logger.info("Done.");
@@ -235,6 +253,47 @@ public class Install
 		logger.info("Creating seen_posts table if it doesn't exist...");
 		postsCreate.execute();
 		logger.info("Done.");
+
+		logger.info("Creating spam_rules table if it doesn't exist...");
+		spamRulesCreate.execute();
+		logger.info("Done.");
+
+		logger.info("Creating source_blogs table if it doesn't exist...");
+		sourceBlogsCreate.execute();
+		logger.info("Done.");
+
+		logger.info("Creating config change triggers...");
+		createNotifyTriggers(conn);
+		logger.info("Done.");
+	}
+
+	/**
+	 * Creates the triggers that notify running bots of config changes, see {@link ConfigListener}
+	 *
+	 * @param conn Connection to the bot's database
+	 * @throws SQLException if creating the triggers fails
+	 */
+	private static void createNotifyTriggers(Connection conn) throws SQLException
+	{
+		Statement stmt = conn.createStatement();
+		stmt.execute("CREATE OR REPLACE FUNCTION sourcebot_notify() RETURNS TRIGGER AS $$ " +
+				"DECLARE changed RECORD; " +
+				"BEGIN " +
+				"IF TG_OP = 'DELETE' THEN changed := OLD; ELSE changed := NEW; END IF; " +
+				"IF TG_TABLE_NAME = 'blogs' THEN " +
+				"PERFORM pg_notify('" + ConfigListener.CHANNEL + "', TG_TABLE_NAME || ':' || changed.id); " +
+				"ELSE " +
+				"PERFORM pg_notify('" + ConfigListener.CHANNEL + "', TG_TABLE_NAME || ':' || changed.blog_id); " +
+				"END IF; " +
+				"RETURN NULL; " +
+				"END; $$ LANGUAGE plpgsql;");
+		for (String table : new String[]{"blogs", "search_inclusions", "search_exclusions", "spam_rules"})
+		{
+			stmt.execute(String.format("DROP TRIGGER IF EXISTS %s_notify ON %s;", table, table));
+			stmt.execute(String.format("CREATE TRIGGER %s_notify AFTER INSERT OR UPDATE OR DELETE ON %s " +
+					"FOR EACH ROW EXECUTE PROCEDURE sourcebot_notify();", table, table));
+		}
+		stmt.close();
 	}
 
 }
@@ -18,19 +18,30 @@
 
 package net.walterbarnes.sourcebot;
 
-import com.github.onyxfoxdevelopment.collections.CollectionHelper;
 import com.tumblr.jumblr.exceptions.JumblrException;
 import com.tumblr.jumblr.types.Post;
+import net.walterbarnes.sourcebot.config.BatchWriter;
 import net.walterbarnes.sourcebot.config.BlogConfig;
-import net.walterbarnes.sourcebot.search.PostComparator;
+import net.walterbarnes.sourcebot.config.BlogSettings;
+import net.walterbarnes.sourcebot.config.ConnectionPool;
+import net.walterbarnes.sourcebot.metrics.Metrics;
+import net.walterbarnes.sourcebot.search.ExclusionMatcher;
+import net.walterbarnes.sourcebot.search.PostOrder;
+import net.walterbarnes.sourcebot.search.SampleSizer;
 import net.walterbarnes.sourcebot.search.SearchExclusion;
 import net.walterbarnes.sourcebot.search.SearchInclusion;
+import net.walterbarnes.sourcebot.search.WeightedSampler;
+import net.walterbarnes.sourcebot.search.spam.SpamFilter;
+import net.walterbarnes.sourcebot.thread.TermFetcher;
+import net.walterbarnes.sourcebot.trace.RunJournal;
+import net.walterbarnes.sourcebot.trace.RunTrace;
 import net.walterbarnes.sourcebot.tumblr.*;
+import net.walterbarnes.sourcebot.util.LongHashSet;
 import org.apache.commons.lang3.StringUtils;
 
-import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -42,198 +53,287 @@ public class SearchThread implements Runnable
 	private final Tumblr client;
 	private final String url;
 	private final Map<String, ISearchTerm> terms = new HashMap<>();
+	private final QueueTracker queue;
+	private final SampleSizer sizer;
+	private final TermFetcher fetcher;
+	private final RunJournal journal;
+	private final Random random = new Random();
 
-	SearchThread(Tumblr client, String url, Connection conn) throws SQLException
+	SearchThread(Tumblr client, String url, ConnectionPool pool, BatchWriter writer, SampleSizer sizer, TermFetcher fetcher,
+			RunJournal journal, long queueReconcile) throws SQLException
 	{
 		this.url = url;
 		this.client = client;
-		this.blog = new BlogConfig(conn, url);
+		this.sizer = sizer;
+		this.fetcher = fetcher;
+		this.journal = journal;
+		this.blog = new BlogConfig(pool, writer, url);
+		this.queue = new QueueTracker(client, url, queueReconcile);
+	}
+
+	public QueueTracker getQueueTracker()
+	{
+		return queue;
 	}
 
 	@Override
 	public void run()
 	{
+		final RunTrace trace = new RunTrace(url);
+		String outcome = "idle";
 		try
 		{
-			// Check the blog's configured posting state and check if we need to post some more posts
-			if ((blog.getPostState().equals("draft") && client.getDrafts(url).size() < blog.getPostBuffer()) ||
-					(blog.getPostState().equals("queue") && client.getQueuedPosts(url).size() < blog.getPostBuffer()))
+			// Take one snapshot of the blog's settings, so the whole run works from the same values
+			BlogSettings settings;
+			String state;
+			boolean needsPosts;
+			try (RunTrace.Span span = trace.start("queue"))
 			{
+				settings = blog.getSettings();
+
+				// Check the blog's configured posting state and check if we need to post some more posts
+				state = settings.getPostState();
+				needsPosts = queue.needsPosts(state, settings.getPostBuffer());
+				span.set("state", state).set("count", queue.getCount());
+			}
+			if (needsPosts)
+			{
+				outcome = "no_posts";
+
 				// We can post in to the queue, but, without being an admin ont he blog, we can't accurately track the
 				// number of posts in the queue to know when to stop posting
-				if (blog.getPostState().equals("queue") && !client.blogInfo(url).isAdmin())
+				if (state.equals("queue") && !queue.isAdmin())
 				{
 					logger.warning("Bot is not admin on '" + url + "', not running thread");
 				}
 
-				logger.info(String.format("[%s] %d posts in queue", url, client.getQueuedPosts(url).size()));
-				logger.info("Adding posts to queue");
+				logger.info(String.format("[%s] %d posts in %s, adding posts", url, queue.getCount(), state));
 
 				// A map of all the posts we pull from the tags/blogs, linked with their search terms
 				Map<Post, String> postMap = new HashMap<>();
 
-				// Load all inclusion rules from the database
-				List<SearchInclusion> inclusions = blog.getInclusions();
-				logger.info(String.format("[%s] %d Search inclusions loaded.", url, inclusions.size()));
-
-				// Load all exclusion rules from the database
-				List<SearchExclusion> exclusions = blog.getExclusions();
-				logger.info(String.format("[%s] %d search exclusions loaded.", url, exclusions.size()));
-
-				List<String> tagBlacklist = new ArrayList<>();
-				List<String> blogBlacklist = new ArrayList<>();
-
-				for (SearchExclusion exclusion : exclusions)
+				List<SearchInclusion> inclusions;
+				final Set<String> blogBlacklist;
+				final ExclusionMatcher tagBlacklist;
+				try (RunTrace.Span span = trace.start("rules"))
 				{
-					if (exclusion.isActive())
+					// Load all inclusion rules from the database
+					inclusions = blog.getInclusions();
+					if (logger.isLoggable(Level.FINE))
 					{
-						switch (exclusion.getType())
-						{
-							case TAG:
-								tagBlacklist.add(exclusion.getTerm());
-								break;
-							case BLOG:
-								blogBlacklist.add(exclusion.getTerm());
-								break;
-						}
+						logger.fine(String.format("[%s] %d Search inclusions loaded.", url, inclusions.size()));
 					}
-				}
 
-				List<Post> posts = new ArrayList<>();
+					// Load all exclusion rules from the database
+					List<SearchExclusion> exclusions = blog.getExclusions();
+					if (logger.isLoggable(Level.FINE))
+					{
+						logger.fine(String.format("[%s] %d search exclusions loaded.", url, exclusions.size()));
+					}
+
+					blogBlacklist = blog.getBlogBlacklist();
+					tagBlacklist = blog.getTagMatcher();
+					span.set("inclusions", inclusions.size()).set("exclusions", exclusions.size());
+				}
 
-				for (SearchInclusion inclusion : inclusions)
+				// Set up the terms here, then run the searches side by side
+				final RunTrace.Span search = trace.start("search");
+				List<SearchInclusion> active = new ArrayList<>();
+				List<Callable<Map<Post, String>>> searches = new ArrayList<>();
+				for (final SearchInclusion inclusion : inclusions)
 				{
 					if (inclusion.isActive())
 					{
-						String term = inclusion.getTerm();
-						logger.info(String.format("Getting posts from %s: %s", inclusion.getType().getName(), term));
+						final String term = inclusion.getTerm();
 						if (!terms.containsKey(inclusion.getFullTerm()))
 						{
 							switch (inclusion.getType())
 							{
 								case TAG:
-									terms.put(inclusion.getFullTerm(), new TagTerm(term, client, blog));
+									terms.put(inclusion.getFullTerm(), new TagTerm(term, client, blog, sizer));
 									break;
 
 								case BLOG:
-									terms.put(inclusion.getFullTerm(), new BlogTerm(term, client, blog));
+									terms.put(inclusion.getFullTerm(), new BlogTerm(term, client, blog, sizer));
 									break;
 							}
 						}
-						ISearchTerm t = terms.get(inclusion.getFullTerm());
+						final ISearchTerm t = terms.get(inclusion.getFullTerm());
 
-						Map<Post, String> p = t.getPosts(blogBlacklist, tagBlacklist, inclusion);
-						postMap.putAll(p);
-						posts.addAll(selectPosts(p.keySet(), inclusion.getPostSelect() != null ? inclusion.getPostSelect() : blog.getPostSelect(), 50));
+						active.add(inclusion);
+						searches.add(new Callable<Map<Post, String>>()
+						{
+							@Override
+							public Map<Post, String> call() throws Exception
+							{
+								if (logger.isLoggable(Level.FINE))
+								{
+									logger.fine(String.format("Getting posts from %s: %s", inclusion.getType().getName(), term));
+								}
+								RunTrace.Span span = search.start(inclusion.getFullTerm());
+								try
+								{
+									return t.getPosts(blogBlacklist, tagBlacklist, inclusion);
+								}
+								finally
+								{
+									span.close();
+								}
+							}
+						});
 					}
 				}
+				List<Map<Post, String>> results = fetcher.fetchAll(searches);
+				search.set("terms", searches.size()).close();
+
+				// Merge in inclusion order rather than as searches finish, so when more than one term finds the same
+				// post, the first inclusion always claims it
+				List<Post> posts = new ArrayList<>();
+				for (int i = 0; i < active.size(); i++)
+				{
+					Map<Post, String> p = results.get(i);
+					if (p == null) continue;
+					SearchInclusion inclusion = active.get(i);
+					for (Map.Entry<Post, String> entry : p.entrySet())
+					{
+						if (!postMap.containsKey(entry.getKey())) postMap.put(entry.getKey(), entry.getValue());
+					}
+					posts.addAll(PostOrder.getOrder(inclusion.getPostSelect() != null ? inclusion.getPostSelect() : settings.getPostSelect()).select(p.keySet(), 50));
+				}
 
 				boolean hasPosted = false;
+				RunTrace.Span select = trace.start("select");
 
-				// Sometimes we won't get any posts from a search, and that's probably ok
-				if (posts.size() > 0)
+				// Drop posts that have already been used before drawing, so every draw is a usable candidate, and draw
+				// without replacement so the loop ends once every candidate has been tried
+				PostOrder order = PostOrder.getOrder(settings.getPostSelect());
+				WeightedSampler<Post> sampler = new WeightedSampler<>(random);
+				LongHashSet added = new LongHashSet();
+				for (Post post : posts)
 				{
-					loop:
-					while (!hasPosted)
-					{
-						logger.info("Selecting post");
-						Collection<Post> p = CollectionHelper.randomElement(posts, 1, true);
+					if (!blog.isPostSeen(post.getId()) && added.add(post.getId())) sampler.add(post, order.getWeight(post));
+				}
+				logger.info(String.format("[%s] %d candidate posts, %d unused", url, posts.size(), sampler.size()));
+				select.set("candidates", posts.size()).set("unused", sampler.size());
 
-						for (Post post : p)
+				// If the user has it enabled for this blog, check posts against the blog's spam rules
+				SpamFilter spam = settings.getCheckBlog() ? blog.getSpamFilter() : null;
+				if (spam != null) spam.prepare(posts);
+
+				// Sometimes we won't get any usable posts from a search, and that's probably ok
+				Post post;
+				int spamCount = 0;
+				loop:
+				while (!hasPosted && (post = sampler.next()) != null)
+				{
+					logger.finer("Selecting post");
+					String rule = spam == null ? null : spam.check(post, client.getBlogCache());
+					if (rule != null)
+					{
+						spamCount++;
+						if (logger.isLoggable(Level.FINE))
 						{
-							if (blog.getPosts().contains(post.getId()))
-							{
-								logger.info("Post already used, getting new post");
-								hasPosted = false;
-								continue;
-							}
+							logger.fine(String.format("[%s] Post %d may be spam (%s), getting new post", url, post.getId(), rule));
+						}
+						continue;
+					}
 
-							// If the user has it enabled for this blog, check if the post might be a spam posts
-							// TODO implement spam match rules
-							if (blog.getCheckBlog() && (client.blogPosts(post.getBlogName()).size() < 5 ||
-									client.blogInfo(post.getBlogName()).getTitle().equals("Без названия")))
-							{
-								logger.info("Post may be spam, getting new post");
-								continue;
-							}
+					Map<String, Object> params = new HashMap<>();
 
-							Map<String, Object> params = new HashMap<>();
+					params.put("state", state);
 
-							params.put("state", blog.getPostState());
+					if (settings.getPostComment() != null)
+					{
+						params.put("comment", settings.getPostComment());
+					}
 
-							if (!(blog.getPostComment() == null || blog.getPostComment().isEmpty() || blog.getPostComment().equals("null")))
-							{
-								params.put("comment", blog.getPostComment());
-							}
+					List<String> rbTags = new ArrayList<>();
 
-							List<String> rbTags = new ArrayList<>();
+					String[] postTags = settings.getPostTags();
+					if (!(postTags == null || postTags.length == 0))
+					{
+						Collections.addAll(rbTags, postTags);
+					}
+
+					if (settings.getPreserveTags()) for (String s : post.getTags()) rbTags.add(s);
 
-							if (!(blog.getPostTags() == null || blog.getPostTags().length == 0))
+					params.put("tags", rbTags.size() == 0 ? "" : StringUtils.join(rbTags, ","));
+					logger.finer("Attempting to reblog post...");
+					Post rb = null;
+					boolean rbd = false;
+					int failCount = 0;
+					RunTrace.Span reblog = select.start("reblog").set("post", post.getId());
+					while (!rbd)
+					{
+						long start = System.nanoTime();
+						try
+						{
+							rb = post.reblog(url, params);
+							if (rb != null)
 							{
-								Collections.addAll(rbTags, blog.getPostTags());
+								Metrics.REBLOGS.labels("ok").observeNanos(System.nanoTime() - start);
+								rbd = true;
+								hasPosted = true;
+								queue.posted();
 							}
-
-							if (blog.getPreserveTags()) for (String s : post.getTags()) rbTags.add(s);
-
-							params.put("tags", rbTags.size() == 0 ? "" : StringUtils.join(rbTags, ","));
-							logger.info("Attempting to reblog post...");
-							Post rb = null;
-							boolean rbd = false;
-							int failCount = 0;
-							while (!rbd)
+							else
 							{
-								try
-								{
-									rb = post.reblog(url, params);
-									if (rb != null)
-									{
-										rbd = true;
-										hasPosted = true;
-									}
-									else
-									{
-										logger.warning("Posting failed.");
-										failCount++;
-									}
-								}
-								catch (JumblrException e)
+								Metrics.REBLOGS.labels("failed").observeNanos(System.nanoTime() - start);
+								logger.warning("Posting failed.");
+								if (++failCount > 10)
 								{
-									rbd = false;
-									hasPosted = false;
-									failCount++;
-									logger.log(Level.SEVERE, e.getMessage(), e);
-									if (failCount > 10) break loop;
-									Thread.sleep(1000);
+									reblog.set("failures", failCount).close();
+									outcome = "failed";
+									break loop;
 								}
 							}
-							String val = postMap.get(post);
-							logger.info(val);
-							logger.info(terms.toString());
-							ISearchTerm t = terms.get(val);
-							PostCache c = t.getCache();
-							c.remove(post.getId());
-							blog.addPost(val.split(":")[0], post.getId(), rb.getId(), val.split(":")[1], post.getBlogName());
+						}
+						catch (JumblrException e)
+						{
+							Metrics.REBLOGS.labels("error").observeNanos(System.nanoTime() - start);
+							rbd = false;
+							hasPosted = false;
+							failCount++;
+							logger.log(Level.SEVERE, e.getMessage(), e);
+							if (failCount > 10)
+							{
+								reblog.set("failures", failCount).close();
+								outcome = "failed";
+								break loop;
+							}
+							Thread.sleep(1000);
 						}
 					}
+					reblog.set("failures", failCount).close();
+					outcome = "reblogged";
+					String val = postMap.get(post);
+					logger.info(String.format("[%s] Reblogged post %d from %s", url, post.getId(), val));
+					if (logger.isLoggable(Level.FINEST)) logger.finest(terms.toString());
+					ISearchTerm t = terms.get(val);
+					PostCache c = t.getCache();
+					c.remove(post.getId());
+					blog.addPost(val.split(":")[0], post.getId(), rb.getId(), val.split(":")[1], post.getBlogName());
 				}
+				select.set("spam", spamCount).close();
 			}
 		}
-		catch (InterruptedException ignored) {}
-		catch (Exception e) { logger.log(Level.SEVERE, e.getMessage(), e); }
-	}
-
-	private List<Post> selectPosts(Collection<Post> posts, String method, int n) throws InstantiationException, IllegalAccessException
-	{
-		switch (method)
+		catch (InterruptedException e)
 		{
-			case "top":
-				return (List<Post>) CollectionHelper.cutMaxLen(CollectionHelper.sortByCompare(posts, PostComparator.NoteCount.class, true), n);
-
-			case "recent":
-				return (List<Post>) CollectionHelper.cutMaxLen(CollectionHelper.sortByCompare(posts, PostComparator.Timestamp.class, true), n);
+			outcome = "interrupted";
+		}
+		catch (Exception e)
+		{
+			outcome = "error";
+			logger.log(Level.SEVERE, e.getMessage(), e);
+		}
+		finally
+		{
+			trace.finish(outcome);
+			journal.add(trace);
 
-			default:
-				return (List<Post>) CollectionHelper.cutMaxLen(CollectionHelper.sortByCompare(posts, PostComparator.Timestamp.class, true), n);
+			// Set here rather than read when scraped, as reading them can block on the blog's searches
+			Metrics.QUEUE_DEPTH.labels(url).set(queue.getCount());
+			Metrics.SEEN_POSTS.labels(url).set(blog.getSeenPostCount());
 		}
 	}
 }
@@ -21,19 +21,36 @@ package net.walterbarnes.sourcebot;
 import com.google.gson.JsonObject;
 import net.walterbarnes.sourcebot.cli.Cli;
 import net.walterbarnes.sourcebot.command.CommandHandler;
-import net.walterbarnes.sourcebot.config.Configuration;
+import net.walterbarnes.sourcebot.config.*;
 import net.walterbarnes.sourcebot.crash.CrashReport;
+import net.walterbarnes.sourcebot.metrics.Gauge;
+import net.walterbarnes.sourcebot.metrics.Metrics;
+import net.walterbarnes.sourcebot.metrics.MetricsServer;
+import net.walterbarnes.sourcebot.search.SampleSizer;
+import net.walterbarnes.sourcebot.sim.SimulatedApi;
+import net.walterbarnes.sourcebot.sim.SimulatedTumblr;
+import net.walterbarnes.sourcebot.thread.BlogScheduler;
 import net.walterbarnes.sourcebot.thread.InputThread;
+import net.walterbarnes.sourcebot.thread.TermFetcher;
+import net.walterbarnes.sourcebot.trace.RunJournal;
+import net.walterbarnes.sourcebot.tumblr.RateLimiter;
+import net.walterbarnes.sourcebot.tumblr.SourceBlogCache;
+import net.walterbarnes.sourcebot.tumblr.TagSearchCache;
 import net.walterbarnes.sourcebot.tumblr.Tumblr;
 import net.walterbarnes.sourcebot.util.LogHelper;
 import org.scribe.exceptions.OAuthConnectionException;
 
 import java.io.File;
+import java.io.IOException;
 import java.sql.*;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -45,26 +62,45 @@ public class SourceBot
 	 */
 	private static final SourceBot currentBot;
 
+	/**
+	 * Limits on how long to wait before querying the blogs again after a database error, in milliseconds
+	 */
+	private static final long MIN_DB_BACKOFF = 1000;
+	private static final long MAX_DB_BACKOFF = 60000;
+
 	static {currentBot = new SourceBot();}
 
 	/**
 	 * Default config file name, in the future, this may be overridden via command line arguments
 	 */
 	public final String confName = "SourceBot.json";
-	public final Map<String, SearchThread> threads = new HashMap<>();
+	public final Map<String, SearchThread> threads = new ConcurrentHashMap<>();
 	private final Logger logger = Logger.getLogger(SourceBot.class.getName());
 	private final InputThread inputThread = new InputThread();
 	public volatile boolean running = true;
+	/**
+	 * Whether to answer API calls with the simulator rather than Tumblr, set via command-line arguments
+	 */
+	public boolean simulate = false;
+	/**
+	 * Thread running the blog scheduler loop
+	 */
 	public Thread currentThread;
 	public Tumblr client;
+	/**
+	 * Traces of recent blog runs
+	 */
+	public RunJournal journal;
 	/**
 	 * Default configuration directory, can be overridden via command-line arguments
 	 */
 	public File confDir = new File(System.getProperty("user.home"), ".sourcebot");
 
 	private Configuration conf;
-	private Connection conn;
+	private ConnectionPool pool;
+	private BatchWriter writer;
 	private CommandHandler commandHandler;
+	private MetricsServer metricsServer;
 
 	public static void main(String[] args)
 	{
@@ -105,6 +141,7 @@ public class SourceBot
 
 			// Load/read config
 			currentBot.conf.init();
+			LogHelper.configure(currentBot.conf.getCategory("logging", new JsonObject()));
 
 			// Run main thread
 			currentBot.run();
@@ -120,21 +157,32 @@ public class SourceBot
 			{
 				currentBot.currentThread.interrupt();
 			}
-			if (currentBot.conn != null)
+			if (currentBot.writer != null)
 			{
-				try
-				{
-					currentBot.conn.close();
-				}
-				catch (SQLException e)
-				{
-					currentBot.logger.warning("Error occurred on closing connection to database");
-				}
+				currentBot.writer.close();
+			}
+			if (currentBot.pool != null)
+			{
+				currentBot.pool.close();
+			}
+			if (currentBot.metricsServer != null)
+			{
+				currentBot.metricsServer.stop();
 			}
+			if (currentBot.journal != null)
+			{
+				currentBot.journal.close();
+			}
+			if (currentBot.client instanceof SimulatedTumblr)
+			{
+				currentBot.logger.info("Simulator: " + ((SimulatedTumblr) currentBot.client).getStats());
+			}
+			LogHelper.shutdown();
 		}
 	}
 
-	private void run() throws SQLException, ClassNotFoundException, IllegalAccessException, InstantiationException
+	private void run() throws SQLException, ClassNotFoundException, IllegalAccessException, InstantiationException,
+			InterruptedException
 	{
 		Class.forName("org.postgresql.Driver").newInstance();
 
@@ -148,72 +196,235 @@ public class SourceBot
 		String token = tokenCat.getString("key", "");
 		String tokenSecret = tokenCat.getString("secret", "");
 
-		this.client = new Tumblr(consumerKey, consumerSecret, token, tokenSecret);
+		Configuration limitsCat = apiCat.getCategory("limits", new JsonObject());
+		int hourlyLimit = limitsCat.getInt("hourly", 1000);
+		int dailyLimit = limitsCat.getInt("daily", 5000);
+
+		if (simulate)
+		{
+			Configuration simCat = conf.getCategory("simulator", new JsonObject());
+			this.client = new SimulatedTumblr(new SimulatedApi(simCat.getInt("seed", 1), simCat.getInt("latency", 150),
+					simCat.getInt("latency_spread", 50) / 100.0, simCat.getInt("error_rate", 5) / 1000.0,
+					simCat.getInt("throttle_rate", 50), simCat.getInt("blog_posts", 200), simCat.getInt("tag_rate", 600),
+					simCat.getInt("publish_interval", 600) * 1000L));
+			// The simulator throttles on its own, so it gets limits high enough for the bot to be load tested
+			hourlyLimit = simCat.getInt("hourly_limit", 100000);
+			dailyLimit = simCat.getInt("daily_limit", 2400000);
+		}
+		else
+		{
+			this.client = new Tumblr(consumerKey, consumerSecret, token, tokenSecret);
+		}
+		client.setRateLimiter(new RateLimiter(hourlyLimit, dailyLimit));
+
+		Configuration searchCat = conf.getCategory("search", new JsonObject());
+		client.setPrefetch(searchCat.getInt("prefetch_depth", 4), searchCat.getInt("prefetch_threads", 8));
+		client.setTagCache(new TagSearchCache(client, searchCat.getInt("tag_window", 300),
+				searchCat.getInt("tag_cache_ttl", 600) * 1000L, searchCat.getInt("tag_cache_pages", 2000)));
+		final SampleSizer sizer = new SampleSizer(searchCat.getInt("min_depth", 20), searchCat.getInt("max_depth", 2000),
+				searchCat.getInt("time_budget", 60) * 1000L, searchCat.getInt("target_yield", 5) / 100.0,
+				searchCat.getInt("refresh_interval", 600) * 1000L, searchCat.getInt("max_refresh_interval", 21600) * 1000L);
+		final TermFetcher fetcher = new TermFetcher(searchCat.getInt("term_threads", 16), searchCat.getInt("term_parallelism", 4));
 
 		String dbHost = dbCat.getString("host", "");
 		String dbPort = dbCat.getString("port", "");
 		String dbUser = dbCat.getString("user", "");
 		String dbPass = dbCat.getString("pass", "");
 		String dbName = dbCat.getString("db_name", "");
+		int batchSize = dbCat.getInt("batch_size", 100);
+		long flushInterval = dbCat.getInt("flush_interval", 5) * 1000L;
+		Configuration schedCat = conf.getCategory("scheduler", new JsonObject());
+		int workers = schedCat.getInt("workers", Runtime.getRuntime().availableProcessors());
+		// One connection per worker, plus one each for the scheduler and the batch writer
+		int poolSize = dbCat.getInt("pool_size", workers + 2);
+		long poolTimeout = dbCat.getInt("pool_timeout", 30) * 1000L;
+		long interval = schedCat.getInt("interval", 60) * 1000L;
+		final long queueReconcile = schedCat.getInt("queue_reconcile", 900) * 1000L;
+		// How often to reload config when changes are being pushed by the database, only as a safety net
+		final long configRefresh = schedCat.getInt("config_refresh", 900) * 1000L;
 		if (conf.hasChanged()) conf.save();
 
 		logger.info(String.format("jdbc:postgresql://%s:%s/%s", dbHost, dbPort, dbName));
 
-		final Connection conn = DriverManager.getConnection(String.format("jdbc:postgresql://%s:%s/%s", dbHost, dbPort, dbName),
-				dbUser, dbPass);
+		final ConnectionPool pool = this.pool = new ConnectionPool(String.format("jdbc:postgresql://%s:%s/%s", dbHost, dbPort, dbName),
+				dbUser, dbPass, poolSize, poolTimeout);
 
-		Thread botThread = new Thread()
+		final BatchWriter writer = this.writer = new BatchWriter(pool, batchSize, flushInterval);
+
+		client.setBlogCache(new SourceBlogCache(client, searchCat.getBoolean("persist_source_blogs", true) ? pool : null,
+				searchCat.getInt("source_blog_ttl", 24 * 60 * 60) * 1000L, searchCat.getInt("source_blog_negative_ttl", 60 * 60) * 1000L,
+				searchCat.getInt("source_blog_cache_size", 10000)));
+
+		Metrics.CACHE_ENTRIES.labels("tag_pages").setSource(new Gauge.ISource()
 		{
-			public void run()
+			@Override
+			public double getValue()
 			{
-				try
+				return client.getTagCache().size();
+			}
+		});
+		Metrics.CACHE_ENTRIES.labels("source_blogs").setSource(new Gauge.ISource()
+		{
+			@Override
+			public double getValue()
+			{
+				return client.getBlogCache().size();
+			}
+		});
+
+		Configuration journalCat = conf.getCategory("journal", new JsonObject());
+		// Traces of every run are appended to the journal file as JSON lines, and the most recent kept in memory
+		journal = new RunJournal(journalCat.getInt("size", 1000),
+				journalCat.getBoolean("file", true) ? new File("logs", "journal.jsonl") : null,
+				journalCat.getInt("max_size", 10) * 1024L * 1024L, journalCat.getInt("files", 5));
+
+		Configuration metricsCat = conf.getCategory("metrics", new JsonObject());
+		// Only listen locally by default, set the port to 0 to turn the endpoint off
+		String metricsHost = metricsCat.getString("host", "127.0.0.1");
+		int metricsPort = metricsCat.getInt("port", 9464);
+		if (conf.hasChanged()) conf.save();
+		if (metricsPort > 0)
+		{
+			try
+			{
+				metricsServer = new MetricsServer(metricsHost, metricsPort);
+				metricsServer.start();
+			}
+			catch (IOException e)
+			{
+				logger.log(Level.WARNING, "Unable to start metrics server on port " + metricsPort, e);
+			}
+		}
+
+		final AtomicBoolean blogsChanged = new AtomicBoolean(true);
+		final ConfigListener listener = new ConfigListener(pool, new IConfigChangeHandler()
+		{
+			@Override
+			public void configChanged(String table, String blogId)
+			{
+				if (table.equals("blogs")) blogsChanged.set(true);
+				SearchThread thread = getThreadByBlogId(blogId);
+				if (thread == null) return;
+				switch (table)
 				{
-					PreparedStatement getBlogs = conn.prepareStatement("SELECT url,active,adm_active FROM blogs ORDER BY id;",
-							ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+					case "blogs":
+						thread.blog.invalidateSettings();
+						break;
+					case "search_inclusions":
+						thread.blog.invalidateInclusions();
+						break;
+					case "search_exclusions":
+						thread.blog.invalidateExclusions();
+						break;
+					case "spam_rules":
+						thread.blog.invalidateSpamRules();
+						break;
+				}
+			}
 
-					ResultSet rs = getBlogs.executeQuery();
+			@Override
+			public void listeningChanged(boolean listening)
+			{
+				long refresh = listening ? configRefresh : BlogConfig.DEFAULT_REFRESH_INTERVAL;
+				for (SearchThread thread : threads.values())
+				{
+					thread.blog.setRefreshInterval(refresh);
+					thread.blog.invalidateSettings();
+					thread.blog.invalidateInclusions();
+					thread.blog.invalidateExclusions();
+					thread.blog.invalidateSpamRules();
+				}
+				blogsChanged.set(true);
+			}
+		});
+		Thread listenerThread = new Thread(listener, "Config Listener");
+		listenerThread.setDaemon(true);
+		listenerThread.start();
 
-					long queryTime = System.currentTimeMillis();
+		final BlogScheduler scheduler = new BlogScheduler(workers, interval);
+		logger.info(String.format("Running up to %d blogs at once", workers));
+
+		Thread botThread = new Thread("Blog Scheduler")
+		{
+			public void run()
+			{
+				try
+				{
+					List<String> blogs = new ArrayList<>();
+					long queryTime = 0;
+					long dbBackoff = 0;
 
 					while (running)
 					{
 						try
 						{
-							if ((System.currentTimeMillis() - queryTime) > 60000)
+							// Changes to the blogs table are pushed while the listener is up, so the list only needs
+							// to be polled as a fallback
+							long blogsRefresh = listener.isListening() ? configRefresh : BlogConfig.DEFAULT_REFRESH_INTERVAL;
+							if (blogsChanged.getAndSet(false) || (System.currentTimeMillis() - queryTime) > blogsRefresh)
 							{
-								rs = getBlogs.executeQuery();
+								blogs = getActiveBlogs(pool);
 								queryTime = System.currentTimeMillis();
+								dbBackoff = 0;
+							}
+
+							// Drop blogs that are no longer active once their last run has finished, along with
+							// their metrics
+							for (Iterator<String> it = threads.keySet().iterator(); it.hasNext(); )
+							{
+								String url = it.next();
+								if (!blogs.contains(url) && !scheduler.isRunning(url))
+								{
+									it.remove();
+									Metrics.QUEUE_DEPTH.remove(url);
+									Metrics.SEEN_POSTS.remove(url);
+								}
 							}
 
-							rs.beforeFirst();
-							while (rs.next() && running)
+							for (String url : blogs)
 							{
-								String url = rs.getString("url");
-								boolean active = rs.getBoolean("active");
-								boolean adm_active = rs.getBoolean("adm_active");
-								if (active && adm_active)
+								if (!running) break;
+								if (!scheduler.isRunning(url))
 								{
 									if (!threads.containsKey(url))
 									{
-										SearchThread bt = new SearchThread(client, url, conn);
+										SearchThread bt = new SearchThread(client, url, pool, writer, sizer, fetcher, journal, queueReconcile);
+										if (listener.isListening()) bt.blog.setRefreshInterval(configRefresh);
 										threads.put(url, bt);
 									}
-									logger.info("Running Thread for " + url);
-									long start = System.currentTimeMillis();
-									currentThread = new Thread(threads.get(url));
-									currentThread.start();
-									currentThread.join();
-									logger.info("Took " + (System.currentTimeMillis() - start) + " ms");
+									scheduler.schedule(url, threads.get(url));
 								}
 							}
+
+							// Wake up whenever a blog finishes, or at least once a second to check for blogs that
+							// have become due
+							scheduler.await(1000);
 						}
 						catch (OAuthConnectionException e)
 						{
 							logger.log(Level.SEVERE, e.getMessage(), e);
 						}
+						catch (SQLException e)
+						{
+							// Keep running the blogs we already know about, and give the pool time to reconnect
+							// before querying again
+							dbBackoff = Math.min(MAX_DB_BACKOFF, Math.max(MIN_DB_BACKOFF, dbBackoff * 2));
+							logger.log(Level.WARNING, String.format("Database error, retrying in %d ms", dbBackoff), e);
+							blogsChanged.set(true);
+							try
+							{
+								Thread.sleep(dbBackoff);
+							}
+							catch (InterruptedException ignored)
+							{
+								Thread.currentThread().interrupt();
+								break;
+							}
+						}
 						catch (InterruptedException ignored)
 						{
 							Thread.currentThread().interrupt();
+							break;
 						}
 					}
 				}
@@ -221,9 +432,52 @@ public class SourceBot
 				{
 					displayCrashReport(new CrashReport("Unexpected error", throwable));
 				}
+				finally
+				{
+					scheduler.shutdown(30000);
+					fetcher.shutdown();
+				}
 			}
 		};
+		currentThread = botThread;
 		botThread.start();
+		botThread.join();
+	}
+
+	/**
+	 * Finds the thread for a blog by the blog's database id
+	 *
+	 * @param blogId Id of the blog
+	 * @return the blog's thread, or null if it hasn't been started
+	 */
+	private SearchThread getThreadByBlogId(String blogId)
+	{
+		for (SearchThread thread : threads.values())
+		{
+			if (thread.blog.getId().equals(blogId)) return thread;
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the urls of all blogs that are active, and haven't been disabled by an admin
+	 *
+	 * @param pool Pool to borrow a connection from
+	 * @return list of blog urls
+	 * @throws SQLException if the query fails
+	 */
+	private static List<String> getActiveBlogs(ConnectionPool pool) throws SQLException
+	{
+		List<String> out = new ArrayList<>();
+		try (PooledConnection conn = pool.borrow())
+		{
+			ResultSet rs = conn.prepare("SELECT url FROM blogs WHERE active AND adm_active ORDER BY id").executeQuery();
+			while (rs.next())
+			{
+				out.add(rs.getString("url"));
+			}
+		}
+		return out;
 	}
 
 	/**
@@ -37,6 +37,7 @@ public class Cli
 
 		options.addOption(null, "install", false, "Initial install");
 		options.addOption("c", "config", true, "Path to config file (Default: ~/.sourcebot)");
+		options.addOption(null, "simulate", false, "Answer API calls with a local simulator instead of Tumblr");
 	}
 
 	public void parse()
@@ -52,6 +53,11 @@ public class Cli
 			{
 				setConfigDir(cmd.getOptionValue('c'));
 			}
+			if (cmd.hasOption("simulate"))
+			{
+				SourceBot.getCurrentBot().simulate = true;
+				logger.info("Using simulated Tumblr API");
+			}
 			if (cmd.hasOption("install"))
 			{
 				install();
@@ -29,6 +29,8 @@ public class CommandHandler
 	{
 		registerCommand("stop", new CommandStop());
 		registerCommand("purge", new CommandPurge());
+		registerCommand("quota", new CommandQuota());
+		registerCommand("slowest", new CommandSlowest());
 	}
 
 	@SuppressWarnings ("UnusedReturnValue")
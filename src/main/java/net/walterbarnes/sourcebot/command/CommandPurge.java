@@ -19,6 +19,7 @@
 package net.walterbarnes.sourcebot.command;
 
 import com.tumblr.jumblr.types.Post;
+import net.walterbarnes.sourcebot.SearchThread;
 import net.walterbarnes.sourcebot.SourceBot;
 
 import java.util.List;
@@ -33,7 +34,8 @@ public class CommandPurge implements ICommand
 	{
 		List<Post> posts = null;
 		logger.info(args[0]);
-		switch (SourceBot.getCurrentBot().threads.get(args[0]).blog.getPostState())
+		SearchThread thread = SourceBot.getCurrentBot().threads.get(args[0]);
+		switch (thread.blog.getPostState())
 		{
 			case "draft":
 				posts = SourceBot.getCurrentBot().client.getDrafts(args[0]);
@@ -49,5 +51,6 @@ public class CommandPurge implements ICommand
 				post.delete();
 			}
 		}
+		thread.getQueueTracker().invalidate();
 	}
 }
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.command;
+
+import net.walterbarnes.sourcebot.SourceBot;
+import net.walterbarnes.sourcebot.sim.SimulatedTumblr;
+
+import java.util.logging.Logger;
+
+public class CommandQuota implements ICommand
+{
+	private static final Logger logger = Logger.getLogger(CommandQuota.class.getName());
+
+	@Override
+	public void run(String... args)
+	{
+		logger.info("API quota: " + SourceBot.getCurrentBot().client.getRateLimiter());
+		logger.info("Tag cache: " + SourceBot.getCurrentBot().client.getTagCache());
+		logger.info("Source blog cache: " + SourceBot.getCurrentBot().client.getBlogCache());
+		if (SourceBot.getCurrentBot().client instanceof SimulatedTumblr)
+		{
+			logger.info("Simulator: " + ((SimulatedTumblr) SourceBot.getCurrentBot().client).getStats());
+		}
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.command;
+
+import net.walterbarnes.sourcebot.SourceBot;
+import net.walterbarnes.sourcebot.trace.RunJournal;
+import net.walterbarnes.sourcebot.trace.RunTrace;
+
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Prints the traces of the slowest recent runs, usage: {@code slowest [count] [blog]}
+ */
+public class CommandSlowest implements ICommand
+{
+	private static final Logger logger = Logger.getLogger(CommandSlowest.class.getName());
+
+	@Override
+	public void run(String... args)
+	{
+		RunJournal journal = SourceBot.getCurrentBot().journal;
+		if (journal == null)
+		{
+			logger.info("No runs have been traced yet");
+			return;
+		}
+		int n = 5;
+		String blog = null;
+		if (args.length > 0)
+		{
+			try
+			{
+				n = Integer.parseInt(args[0]);
+			}
+			catch (NumberFormatException e)
+			{
+				n = 0;
+			}
+			if (n < 1)
+			{
+				logger.warning("Usage: slowest [count] [blog]");
+				return;
+			}
+		}
+		if (args.length > 1) blog = args[1];
+
+		List<RunTrace> traces = journal.getSlowest(n, blog);
+		logger.info(String.format("%d slowest of %d recent runs", traces.size(), journal.size()));
+		for (RunTrace trace : traces) logger.info(trace.toString());
+	}
+}
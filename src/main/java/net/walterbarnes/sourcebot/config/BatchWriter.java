@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.config;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Buffers writes to the seen_posts and search_stats tables, and writes them out in JDBC batches from a background
+ * thread, either when enough rows have built up or when the flush interval passes
+ * <p>
+ * {@link #close()} must be called on shutdown to write out anything still buffered
+ */
+public class BatchWriter
+{
+	private static final Logger logger = Logger.getLogger(BatchWriter.class.getName());
+	/**
+	 * Rows that failed to write are kept for the next flush, up to this many
+	 */
+	private static final int MAX_RETAINED = 10000;
+
+	private static final String ADD_POST = "INSERT INTO seen_posts (blog_id, search_type, post_id, rb_id, search_term, blog) VALUES (?::UUID, ?, ?, ?, ?, ?)";
+	private static final String ADD_STAT = "INSERT INTO search_stats (blog_id, type, term, search_time, searched, selected) VALUES (?::UUID, ?, ?, ?, ?, ?)";
+
+	private final ConnectionPool pool;
+	private final int batchSize;
+	private final long flushInterval;
+	private final LinkedBlockingQueue<PostRow> posts = new LinkedBlockingQueue<>();
+	private final LinkedBlockingQueue<StatRow> stats = new LinkedBlockingQueue<>();
+	private final Object signal = new Object();
+	private final Thread flusher;
+	private volatile boolean running = true;
+
+	/**
+	 * @param pool          Pool to borrow connections from for each flush
+	 * @param batchSize     Number of buffered rows that triggers a flush
+	 * @param flushInterval Maximum time rows stay buffered, in milliseconds
+	 */
+	public BatchWriter(ConnectionPool pool, int batchSize, long flushInterval)
+	{
+		this.pool = pool;
+		this.batchSize = batchSize;
+		this.flushInterval = flushInterval;
+		this.flusher = new Thread("Batch Writer")
+		{
+			@Override
+			public void run()
+			{
+				while (running)
+				{
+					try
+					{
+						synchronized (signal)
+						{
+							if (posts.size() + stats.size() < BatchWriter.this.batchSize)
+							{
+								signal.wait(BatchWriter.this.flushInterval);
+							}
+						}
+						flush();
+					}
+					catch (InterruptedException e)
+					{
+						break;
+					}
+					catch (SQLException e)
+					{
+						logger.log(Level.SEVERE, e.getMessage(), e);
+					}
+				}
+			}
+		};
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+	public void addPost(String blogId, String type, long id, long rbId, String tag, String blogName)
+	{
+		posts.add(new PostRow(blogId, type, id, rbId, tag, blogName));
+		signalIfFull();
+	}
+
+	public void addStat(String blogId, String type, String tag, int time, int searched, int selected)
+	{
+		stats.add(new StatRow(blogId, type, tag, time, searched, selected));
+		signalIfFull();
+	}
+
+	private void signalIfFull()
+	{
+		if (posts.size() + stats.size() >= batchSize)
+		{
+			synchronized (signal)
+			{
+				signal.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Writes out all buffered rows
+	 *
+	 * @throws SQLException if writing fails, the rows will be retried on the next flush
+	 */
+	public synchronized void flush() throws SQLException
+	{
+		List<PostRow> postRows = new ArrayList<>();
+		List<StatRow> statRows = new ArrayList<>();
+		posts.drainTo(postRows);
+		stats.drainTo(statRows);
+		if (postRows.isEmpty() && statRows.isEmpty()) return;
+
+		try (PooledConnection conn = pool.borrow())
+		{
+			if (!postRows.isEmpty()) write(conn.prepare(ADD_POST), postRows);
+			if (!statRows.isEmpty()) write(conn.prepare(ADD_STAT), statRows);
+		}
+		catch (SQLException e)
+		{
+			// Put back whatever didn't get written, dropping the oldest rows if we've been failing for a while
+			retain(postRows, posts);
+			retain(statRows, stats);
+			throw e;
+		}
+	}
+
+	/**
+	 * Writes the rows as one batch, removing them from the list as they're written
+	 * <p>
+	 * A batch is written as a single transaction, so one row the database rejects fails the whole batch. When that
+	 * happens the rows are written one at a time instead, and any row rejected with a data error is dropped, as it
+	 * would only fail again. Other errors are thrown, leaving the unwritten rows in the list to be retried.
+	 */
+	private static void write(PreparedStatement stmt, List<? extends Row> rows) throws SQLException
+	{
+		try
+		{
+			for (Row row : rows)
+			{
+				row.bind(stmt);
+				stmt.addBatch();
+			}
+			stmt.executeBatch();
+			rows.clear();
+			return;
+		}
+		catch (SQLException e)
+		{
+			stmt.clearBatch();
+			if (!isDataError(e)) throw e;
+			logger.log(Level.WARNING, "Batch rejected, writing rows one at a time", e);
+		}
+
+		for (Iterator<? extends Row> it = rows.iterator(); it.hasNext(); )
+		{
+			Row row = it.next();
+			row.bind(stmt);
+			try
+			{
+				stmt.executeUpdate();
+			}
+			catch (SQLException e)
+			{
+				if (!isDataError(e)) throw e;
+				logger.warning(String.format("Dropping row rejected by the database (%s): %s", e.getSQLState(), row));
+			}
+			it.remove();
+		}
+	}
+
+	/**
+	 * @return true if the exception, or one chained to it, is a data exception or an integrity constraint violation
+	 */
+	private static boolean isDataError(SQLException e)
+	{
+		Throwable t = e;
+		while (t != null)
+		{
+			if (t instanceof SQLException)
+			{
+				SQLException sql = (SQLException) t;
+				String state = sql.getSQLState();
+				if (state != null && (state.startsWith("22") || state.startsWith("23"))) return true;
+				// The driver puts the error for the row that failed a batch on the next exception
+				t = sql.getNextException() != null ? sql.getNextException() : sql.getCause();
+			}
+			else t = t.getCause();
+		}
+		return false;
+	}
+
+	private static <T> void retain(List<T> rows, LinkedBlockingQueue<T> queue)
+	{
+		if (rows.isEmpty()) return;
+		List<T> rest = new ArrayList<>();
+		queue.drainTo(rest);
+		rows.addAll(rest);
+		int skip = Math.max(0, rows.size() - MAX_RETAINED);
+		if (skip > 0) logger.warning(String.format("Dropping %d buffered rows after repeated write failures", skip));
+		queue.addAll(rows.subList(skip, rows.size()));
+	}
+
+	/**
+	 * Stops the background thread and writes out anything still buffered
+	 */
+	public void close()
+	{
+		running = false;
+		flusher.interrupt();
+		try
+		{
+			flusher.join(5000);
+			flush();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch (SQLException e)
+		{
+			logger.log(Level.SEVERE, "Unable to write buffered rows on shutdown", e);
+		}
+	}
+
+	private abstract static class Row
+	{
+		abstract void bind(PreparedStatement stmt) throws SQLException;
+	}
+
+	private static class PostRow extends Row
+	{
+		private final String blogId;
+		private final String type;
+		private final long id;
+		private final long rbId;
+		private final String tag;
+		private final String blogName;
+
+		private PostRow(String blogId, String type, long id, long rbId, String tag, String blogName)
+		{
+			this.blogId = blogId;
+			this.type = type;
+			this.id = id;
+			this.rbId = rbId;
+			this.tag = tag;
+			this.blogName = blogName;
+		}
+
+		@Override
+		void bind(PreparedStatement stmt) throws SQLException
+		{
+			stmt.setString(1, blogId);
+			stmt.setString(2, type);
+			stmt.setLong(3, id);
+			stmt.setLong(4, rbId);
+			stmt.setString(5, tag);
+			stmt.setString(6, blogName);
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("seen_posts %s %s:%s %d", blogId, type, tag, id);
+		}
+	}
+
+	private static class StatRow extends Row
+	{
+		private final String blogId;
+		private final String type;
+		private final String tag;
+		private final int time;
+		private final int searched;
+		private final int selected;
+
+		private StatRow(String blogId, String type, String tag, int time, int searched, int selected)
+		{
+			this.blogId = blogId;
+			this.type = type;
+			this.tag = tag;
+			this.time = time;
+			this.searched = searched;
+			this.selected = selected;
+		}
+
+		@Override
+		void bind(PreparedStatement stmt) throws SQLException
+		{
+			stmt.setString(1, blogId);
+			stmt.setString(2, type);
+			stmt.setString(3, tag);
+			stmt.setInt(4, time);
+			stmt.setInt(5, searched);
+			stmt.setInt(6, selected);
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("search_stats %s %s:%s", blogId, type, tag);
+		}
+	}
+}
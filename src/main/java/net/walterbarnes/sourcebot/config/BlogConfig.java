@@ -18,15 +18,17 @@
 
 package net.walterbarnes.sourcebot.config;
 
+import net.walterbarnes.sourcebot.search.ExclusionMatcher;
 import net.walterbarnes.sourcebot.search.SearchExclusion;
 import net.walterbarnes.sourcebot.search.SearchInclusion;
+import net.walterbarnes.sourcebot.search.TermStats;
+import net.walterbarnes.sourcebot.search.spam.SpamFilter;
+import net.walterbarnes.sourcebot.util.LongHashSet;
 
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -34,307 +36,415 @@ import java.util.logging.Logger;
 public class BlogConfig
 {
 	private static final Logger logger = Logger.getLogger(BlogConfig.class.getName());
-	@SuppressWarnings ("FieldCanBeLocal")
+	private static final String GET_CONFIG = "SELECT * FROM blogs WHERE id = ?::UUID";
+	private static final String GET_CONFIG_BY_URL = "SELECT * FROM blogs WHERE url = ?";
+	/**
+	 * Default maximum age of the settings, inclusions and exclusions before they're reloaded, in milliseconds
+	 */
+	public static final long DEFAULT_REFRESH_INTERVAL = 60000;
+	private static final String GET_SI = "SELECT * FROM search_inclusions WHERE blog_id = ?::UUID ORDER BY id";
+	private static final String GET_SE = "SELECT * FROM search_exclusions WHERE blog_id = ?::UUID ORDER BY id";
+	private static final String GET_TERM_STATS = "SELECT type, term, count(*) AS runs, sum(searched) AS searched, sum(selected) AS selected, avg(search_time) AS avg_time FROM search_stats WHERE blog_id = ?::UUID AND time > now() - interval '7 days' GROUP BY type, term";
+	private static final String GET_SPAM_RULES = "SELECT type, value FROM spam_rules WHERE blog_id = ?::UUID AND active ORDER BY id";
+	private static final String GET_POSTS = "SELECT id, post_id FROM seen_posts WHERE blog_id = ?::UUID AND id > ? ORDER BY id";
+
 	private final String id;
-	private final PreparedStatement addPosts;
-	private final PreparedStatement addStats;
-	private final PreparedStatement getConfig;
-	private final PreparedStatement getSI;
-	private final PreparedStatement getSE;
-	private final PreparedStatement getPosts;
+	private final ConnectionPool pool;
+	private final BatchWriter writer;
+	private final LongHashSet seenPosts = new LongHashSet();
+	private long seenPostsMark = 0;
+	private long seenPostsQTime = 0;
 	private List<SearchExclusion> exclusions = new ArrayList<>();
-	private long exclusionsQTime = 0;
+	private ExclusionMatcher tagMatcher = ExclusionMatcher.EMPTY;
+	private Set<String> blogBlacklist = Collections.emptySet();
+	private volatile long exclusionsQTime = 0;
 	private List<SearchInclusion> inclusions = new ArrayList<>();
-	private long inclusionsQTime = 0;
-	private ResultSet configRs;
-	private long configQTime = 0;
+	private volatile long inclusionsQTime = 0;
+	private SpamFilter spamFilter = SpamFilter.defaults();
+	private volatile long spamRulesQTime = 0;
+	private Map<String, TermStats> termStats = new HashMap<>();
+	private long termStatsQTime = 0;
+	private final Object settingsLock = new Object();
+	private volatile BlogSettings settings;
+	private volatile long settingsExpiry;
+	private volatile long refreshInterval = DEFAULT_REFRESH_INTERVAL;
 
-	public BlogConfig(Connection conn, String url) throws SQLException
+	public BlogConfig(ConnectionPool pool, BatchWriter writer, String url) throws SQLException
 	{
-		PreparedStatement getBId = conn.prepareStatement("SELECT id FROM blogs WHERE url = ?");
-		getBId.setString(1, url);
-		ResultSet rs = getBId.executeQuery();
-		rs.next();
-		id = rs.getString("id");
-
-		getConfig = conn.prepareStatement("SELECT * FROM blogs WHERE id = ?::UUID", ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
-		getConfig.setString(1, id);
-
-		getSI = conn.prepareStatement("SELECT * FROM search_inclusions WHERE blog_id = ?::UUID ORDER BY id", ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
-		getSI.setString(1, id);
-
-		getSE = conn.prepareStatement("SELECT * FROM search_exclusions WHERE blog_id = ?::UUID ORDER BY id", ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
-		getSE.setString(1, id);
+		this.pool = pool;
+		this.writer = writer;
 
-		getPosts = conn.prepareStatement("SELECT post_id FROM seen_posts WHERE blog_id = ?::UUID", ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
-		getPosts.setString(1, id);
-
-		addPosts = conn.prepareStatement("INSERT INTO seen_posts (blog_id, search_type, post_id, rb_id, search_term, blog) VALUES (?::UUID, ?, ?, ?, ?, ?)", ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
-		addPosts.setString(1, id);
-
-		addStats = conn.prepareStatement("INSERT INTO search_stats (blog_id, type, term, search_time, searched, selected) VALUES (?::UUID, ?, ?, ?, ?, ?)", ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
-		addStats.setString(1, id);
+		try (PooledConnection conn = pool.borrow())
+		{
+			PreparedStatement getConfig = conn.prepare(GET_CONFIG_BY_URL);
+			getConfig.setString(1, url);
+			ResultSet rs = getConfig.executeQuery();
+			if (!rs.next()) throw new SQLException("No blog with url '" + url + "'");
+			settings = BlogSettings.from(rs);
+			settingsExpiry = settings.getLoadTime() + refreshInterval;
+			id = settings.getId();
+		}
 	}
 
-	public boolean addStat(String type, String tag, int time, int searched, int selected) throws SQLException
+	public String getId()
 	{
-		addStats.setString(2, type);
-		addStats.setString(3, tag);
-		addStats.setInt(4, time);
-		addStats.setInt(5, searched);
-		addStats.setInt(6, selected);
-		return addStats.execute();
+		return id;
 	}
 
-	public boolean addPost(String type, long id, long rbId, String tag, String blogName) throws SQLException
+	/**
+	 * Sets how long the settings, inclusions and exclusions are cached for before being reloaded, this can be long
+	 * when changes are pushed through {@link #invalidateSettings()} and friends
+	 *
+	 * @param refreshInterval Maximum age, in milliseconds
+	 */
+	public void setRefreshInterval(long refreshInterval)
 	{
-		addPosts.setString(2, type);
-		addPosts.setLong(3, id);
-		addPosts.setLong(4, rbId);
-		addPosts.setString(5, tag);
-		addPosts.setString(6, blogName);
-		return addPosts.execute();
+		this.refreshInterval = refreshInterval;
 	}
 
-	public List<Long> getPosts() throws SQLException
+	/**
+	 * Records the results of a search, the row is written out in the background by the {@link BatchWriter}
+	 */
+	public void addStat(String type, String tag, int time, int searched, int selected)
 	{
-		List<Long> out = new ArrayList<>();
-		ResultSet rs = getPosts.executeQuery();
-		while (rs.next()) out.add(rs.getLong("post_id"));
-		return out;
+		writer.addStat(this.id, type, tag, time, searched, selected);
 	}
 
-	public String[] getPostType()
+	/**
+	 * Records a reblogged post, it's added to the seen post index immediately, and the row is written out in the
+	 * background by the {@link BatchWriter}
+	 */
+	public void addPost(String type, long id, long rbId, String tag, String blogName)
 	{
-		try
-		{
-			if (System.currentTimeMillis() - configQTime > 60000)
-			{
-				configRs = getConfig.executeQuery();
-				configQTime = System.currentTimeMillis();
-			}
-			configRs.beforeFirst();
-			if (configRs.next())
-			{
-				return (String[]) configRs.getArray("post_type").getArray();
-			}
-		}
-		catch (SQLException e)
+		synchronized (seenPosts)
 		{
-			logger.log(Level.SEVERE, e.getMessage(), e);
-			return null;
+			seenPosts.add(id);
 		}
-		return null;
+		writer.addPost(this.id, type, id, rbId, tag, blogName);
 	}
 
-	public boolean getCheckBlog()
+	/**
+	 * Brings the seen post index up to date, only reading rows added since the last refresh
+	 * <p>
+	 * Posts added through {@link #addPost} are indexed immediately, so this only needs to pick up rows written from
+	 * elsewhere, and is rate limited to once a minute
+	 *
+	 * @throws SQLException if the query fails
+	 */
+	public void refreshSeenPosts() throws SQLException
 	{
-		try
+		synchronized (seenPosts)
 		{
-			if (System.currentTimeMillis() - configQTime > 60000)
+			if (System.currentTimeMillis() - seenPostsQTime > 60000)
 			{
-				configRs = getConfig.executeQuery();
-				configQTime = System.currentTimeMillis();
+				try (PooledConnection conn = pool.borrow())
+				{
+					PreparedStatement getPosts = conn.prepare(GET_POSTS);
+					getPosts.setString(1, id);
+					getPosts.setLong(2, seenPostsMark);
+					ResultSet rs = getPosts.executeQuery();
+					while (rs.next())
+					{
+						seenPosts.add(rs.getLong("post_id"));
+						seenPostsMark = rs.getLong("id");
+					}
+				}
+				seenPostsQTime = System.currentTimeMillis();
 			}
-			configRs.beforeFirst();
-			if (configRs.next())
-			{ return configRs.getBoolean("blog_check_active"); }
-		}
-		catch (SQLException e)
-		{
-			logger.log(Level.SEVERE, e.getMessage(), e);
-			return false;
 		}
-		return false;
 	}
 
-	public boolean getPreserveTags()
+	/**
+	 * Checks whether a post has already been reblogged to this blog, against the index as of the last call to
+	 * {@link #refreshSeenPosts()}
+	 *
+	 * @param postId Id of the post to check
+	 * @return true if the post has been seen
+	 */
+	public boolean isPostSeen(long postId)
 	{
-		try
+		synchronized (seenPosts)
 		{
-			if (System.currentTimeMillis() - configQTime > 60000)
-			{
-				configRs = getConfig.executeQuery();
-				configQTime = System.currentTimeMillis();
-			}
-			configRs.beforeFirst();
-			if (configRs.next())
-			{ return configRs.getBoolean("preserve_tags"); }
+			return seenPosts.contains(postId);
 		}
-		catch (SQLException e)
+	}
+
+	public int getSeenPostCount()
+	{
+		synchronized (seenPosts)
 		{
-			logger.log(Level.SEVERE, e.getMessage(), e);
-			return false;
+			return seenPosts.size();
 		}
-		return false;
 	}
 
-	public String getPostSelect()
+	/**
+	 * Gets the current settings snapshot, reloading it first if it has expired
+	 * <p>
+	 * If reloading fails, the previous snapshot is kept and the error logged, so a database outage doesn't stop the
+	 * blog from running on its last known settings
+	 *
+	 * @return the blog's settings
+	 */
+	public BlogSettings getSettings()
 	{
-		try
+		if (System.currentTimeMillis() < settingsExpiry) return settings;
+
+		synchronized (settingsLock)
 		{
-			if (System.currentTimeMillis() - configQTime > 60000)
+			// Another thread may have reloaded while we were waiting
+			BlogSettings current = settings;
+			if (System.currentTimeMillis() < settingsExpiry) return current;
+
+			try (PooledConnection conn = pool.borrow())
 			{
-				configRs = getConfig.executeQuery();
-				configQTime = System.currentTimeMillis();
+				PreparedStatement getConfig = conn.prepare(GET_CONFIG);
+				getConfig.setString(1, id);
+				ResultSet rs = getConfig.executeQuery();
+				if (rs.next())
+				{
+					current = settings = BlogSettings.from(rs);
+				}
 			}
-			configRs.beforeFirst();
-			if (configRs.next())
-			{ return configRs.getString("post_select"); }
-		}
-		catch (SQLException e)
-		{
-			logger.log(Level.SEVERE, e.getMessage(), e);
-			return null;
+			catch (SQLException e)
+			{
+				logger.log(Level.SEVERE, e.getMessage(), e);
+			}
+			// Failed reloads wait out the TTL too, rather than hitting the database on every read
+			settingsExpiry = System.currentTimeMillis() + refreshInterval;
+			return current;
 		}
-		return null;
+	}
+
+	/**
+	 * Forces the settings to be reloaded on next access
+	 */
+	public void invalidateSettings()
+	{
+		settingsExpiry = 0;
+	}
+
+	/**
+	 * Forces the exclusions to be reloaded on next access
+	 */
+	public void invalidateExclusions()
+	{
+		exclusionsQTime = 0;
+	}
+
+	/**
+	 * Forces the spam rules to be reloaded on next access
+	 */
+	public void invalidateSpamRules()
+	{
+		spamRulesQTime = 0;
+	}
+
+	/**
+	 * Forces the inclusions to be reloaded on next access
+	 */
+	public void invalidateInclusions()
+	{
+		inclusionsQTime = 0;
+	}
+
+	public String[] getPostType()
+	{
+		return getSettings().getPostType();
+	}
+
+	public boolean getCheckBlog()
+	{
+		return getSettings().getCheckBlog();
+	}
+
+	public boolean getPreserveTags()
+	{
+		return getSettings().getPreserveTags();
+	}
+
+	public String getPostSelect()
+	{
+		return getSettings().getPostSelect();
 	}
 
 	public String getPostState()
 	{
-		try
-		{
-			if (System.currentTimeMillis() - configQTime > 60000)
-			{
-				configRs = getConfig.executeQuery();
-				configQTime = System.currentTimeMillis();
-			}
-			configRs.beforeFirst();
-			if (configRs.next())
-			{ return configRs.getString("post_state"); }
-		}
-		catch (SQLException e)
-		{
-			logger.log(Level.SEVERE, e.getMessage(), e);
-			return null;
-		}
-		return null;
+		return getSettings().getPostState();
 	}
 
 	public String getPostComment()
 	{
-		try
-		{
-			if (System.currentTimeMillis() - configQTime > 60000)
-			{
-				configRs = getConfig.executeQuery();
-				configQTime = System.currentTimeMillis();
-			}
-			configRs.beforeFirst();
-			if (configRs.next())
-			{ return configRs.getString("post_comment"); }
-		}
-		catch (SQLException e)
-		{
-			logger.log(Level.SEVERE, e.getMessage(), e);
-			return null;
-		}
-		return null;
+		return getSettings().getPostComment();
 	}
 
 	public String[] getPostTags()
 	{
-		try
-		{
-			if (System.currentTimeMillis() - configQTime > 60000)
-			{
-				configRs = getConfig.executeQuery();
-				configQTime = System.currentTimeMillis();
-			}
-			configRs.beforeFirst();
-			if (configRs.next())
-			{
-				return (String[]) configRs.getArray("post_tags").getArray();
-			}
-		}
-		catch (SQLException e)
-		{
-			logger.log(Level.SEVERE, e.getMessage(), e);
-			return null;
-		}
-		return null;
+		return getSettings().getPostTags();
 	}
 
 	public int getSampleSize()
 	{
-		try
-		{
-			if (System.currentTimeMillis() - configQTime > 60000)
-			{
-				configRs = getConfig.executeQuery();
-				configQTime = System.currentTimeMillis();
-			}
-			configRs.beforeFirst();
-			if (configRs.next())
-			{ return configRs.getInt("sample_size"); }
-		}
-		catch (SQLException e)
-		{
-			logger.log(Level.SEVERE, e.getMessage(), e);
-			return 0;
-		}
-		return 0;
+		return getSettings().getSampleSize();
 	}
 
 	public int getPostBuffer()
 	{
-		try
-		{
-			if (System.currentTimeMillis() - configQTime > 60000)
-			{
-				configRs = getConfig.executeQuery();
-				configQTime = System.currentTimeMillis();
-			}
-			configRs.beforeFirst();
-			if (configRs.next())
-			{ return configRs.getInt("post_buffer"); }
-		}
-		catch (SQLException e)
-		{
-			logger.log(Level.SEVERE, e.getMessage(), e);
-			return 0;
-		}
-		return 0;
+		return getSettings().getPostBuffer();
 	}
 
-	public List<SearchExclusion> getExclusions() throws SQLException
+	public synchronized List<SearchExclusion> getExclusions() throws SQLException
 	{
-		if (System.currentTimeMillis() - exclusionsQTime > 60000)
+		if (System.currentTimeMillis() - exclusionsQTime > refreshInterval)
 		{
-			ResultSet rs = getSE.executeQuery();
 			List<SearchExclusion> out = new ArrayList<>();
-			while (rs.next())
+			List<String> tags = new ArrayList<>();
+			Set<String> blogs = new HashSet<>();
+			try (PooledConnection conn = pool.borrow())
 			{
-				out.add(new SearchExclusion(rs.getInt("id"), rs.getString("type"), rs.getString("term"),
-						rs.getBoolean("active")));
+				PreparedStatement getSE = conn.prepare(GET_SE);
+				getSE.setString(1, id);
+				ResultSet rs = getSE.executeQuery();
+				while (rs.next())
+				{
+					SearchExclusion exclusion = new SearchExclusion(rs.getInt("id"), rs.getString("type"),
+							rs.getString("term"), rs.getBoolean("active"));
+					out.add(exclusion);
+					if (exclusion.isActive() && exclusion.getType() != null)
+					{
+						switch (exclusion.getType())
+						{
+							case TAG:
+								tags.add(exclusion.getTerm());
+								break;
+							case BLOG:
+								blogs.add(exclusion.getTerm());
+								break;
+						}
+					}
+				}
 			}
+			tagMatcher = new ExclusionMatcher(tags);
+			blogBlacklist = Collections.unmodifiableSet(blogs);
 			exclusionsQTime = System.currentTimeMillis();
 			return (exclusions = out);
 		}
 		return exclusions;
 	}
 
+	/**
+	 * Gets the active tag exclusions compiled in to a matcher, rebuilt whenever the exclusions are reloaded
+	 *
+	 * @return the tag matcher
+	 * @throws SQLException if reloading the exclusions fails
+	 */
+	public synchronized ExclusionMatcher getTagMatcher() throws SQLException
+	{
+		getExclusions();
+		return tagMatcher;
+	}
+
+	/**
+	 * Gets the set of blogs excluded by the active blog exclusions
+	 *
+	 * @return an unmodifiable set of blog names
+	 * @throws SQLException if reloading the exclusions fails
+	 */
+	public synchronized Set<String> getBlogBlacklist() throws SQLException
+	{
+		getExclusions();
+		return blogBlacklist;
+	}
+
 	public List<SearchInclusion> getInclusions() throws SQLException
 	{
-		if (System.currentTimeMillis() - inclusionsQTime > 60000)
+		if (System.currentTimeMillis() - inclusionsQTime > refreshInterval)
 		{
-			ResultSet rs = getSI.executeQuery();
 			List<SearchInclusion> out = new ArrayList<>();
-			while (rs.next())
+			try (PooledConnection conn = pool.borrow())
 			{
-				int incId = rs.getInt("id");
-				String type = rs.getString("type");
-				String term = rs.getString("term");
-				String[] required_tags = rs.getArray("required_tags") != null ? (String[]) rs.getArray("required_tags").getArray() : null;
-				String[] postType = rs.getArray("post_type") != null ? (String[]) rs.getArray("post_type").getArray() : null;
-				String postSelect = rs.getString("post_select");
-				int sample = rs.getInt("sample_size");
-				boolean active = rs.getBoolean("active");
-				out.add(new SearchInclusion(incId, type, term, required_tags, postType, postSelect, sample, active));
+				PreparedStatement getSI = conn.prepare(GET_SI);
+				getSI.setString(1, id);
+				ResultSet rs = getSI.executeQuery();
+				while (rs.next())
+				{
+					int incId = rs.getInt("id");
+					String type = rs.getString("type");
+					String term = rs.getString("term");
+					String[] required_tags = rs.getArray("required_tags") != null ? (String[]) rs.getArray("required_tags").getArray() : null;
+					String[] postType = rs.getArray("post_type") != null ? (String[]) rs.getArray("post_type").getArray() : null;
+					String postSelect = rs.getString("post_select");
+					int sample = rs.getInt("sample_size");
+					boolean active = rs.getBoolean("active");
+					out.add(new SearchInclusion(incId, type, term, required_tags, postType, postSelect, sample, active));
+				}
 			}
 			inclusionsQTime = System.currentTimeMillis();
 			return (inclusions = out);
 		}
 		return inclusions;
 	}
+
+	/**
+	 * Gets a search term's totals over the last week, reloaded from the search_stats table once an hour
+	 *
+	 * @param fullTerm Term to get, in the form "type:term"
+	 * @return the term's totals, or null if it has no recorded searches
+	 */
+	public synchronized TermStats getTermStats(String fullTerm)
+	{
+		if (System.currentTimeMillis() - termStatsQTime > 60 * 60 * 1000)
+		{
+			try (PooledConnection conn = pool.borrow())
+			{
+				PreparedStatement getTermStats = conn.prepare(GET_TERM_STATS);
+				getTermStats.setString(1, id);
+				ResultSet rs = getTermStats.executeQuery();
+				Map<String, TermStats> out = new HashMap<>();
+				while (rs.next())
+				{
+					out.put(rs.getString("type") + ":" + rs.getString("term"), new TermStats(rs.getInt("runs"),
+							rs.getLong("searched"), rs.getLong("selected"), rs.getDouble("avg_time")));
+				}
+				termStats = out;
+			}
+			catch (SQLException e)
+			{
+				logger.log(Level.WARNING, "Unable to load search stats", e);
+			}
+			termStatsQTime = System.currentTimeMillis();
+		}
+		return termStats.get(fullTerm);
+	}
+
+	/**
+	 * Gets the blog's spam rules, compiled in to a filter, blogs without any rules get {@link SpamFilter#defaults()}
+	 *
+	 * @return the filter
+	 */
+	public synchronized SpamFilter getSpamFilter()
+	{
+		if (System.currentTimeMillis() - spamRulesQTime > refreshInterval)
+		{
+			try (PooledConnection conn = pool.borrow())
+			{
+				PreparedStatement getSpamRules = conn.prepare(GET_SPAM_RULES);
+				getSpamRules.setString(1, id);
+				ResultSet rs = getSpamRules.executeQuery();
+				Map<String, List<String>> rules = new LinkedHashMap<>();
+				while (rs.next())
+				{
+					String type = rs.getString("type");
+					if (!rules.containsKey(type)) rules.put(type, new ArrayList<String>());
+					rules.get(type).add(rs.getString("value"));
+				}
+				spamFilter = rules.isEmpty() ? SpamFilter.defaults() : SpamFilter.compile(rules);
+			}
+			catch (SQLException e)
+			{
+				logger.log(Level.WARNING, "Unable to load spam rules", e);
+			}
+			spamRulesQTime = System.currentTimeMillis();
+		}
+		return spamFilter;
+	}
 }
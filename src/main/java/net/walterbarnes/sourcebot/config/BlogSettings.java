@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.config;
+
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * An immutable copy of a blog's row in the blogs table
+ * <p>
+ * Snapshots are replaced as a whole when the config is reloaded, so a thread holding one always sees a consistent set
+ * of values, and reading them never touches the database
+ */
+public final class BlogSettings
+{
+	private final String id;
+	private final String url;
+	private final String[] postType;
+	private final String postSelect;
+	private final String postState;
+	private final String postComment;
+	private final String[] postTags;
+	private final boolean preserveTags;
+	private final boolean checkBlog;
+	private final int sampleSize;
+	private final int postBuffer;
+	private final long loadTime;
+
+	private BlogSettings(ResultSet rs) throws SQLException
+	{
+		this.id = rs.getString("id");
+		this.url = rs.getString("url");
+		this.postType = getStringArray(rs, "post_type");
+		this.postSelect = rs.getString("post_select");
+		this.postState = rs.getString("post_state");
+		this.postComment = rs.getString("post_comment");
+		this.postTags = getStringArray(rs, "post_tags");
+		this.preserveTags = rs.getBoolean("preserve_tags");
+		this.checkBlog = rs.getBoolean("blog_check_active");
+		this.sampleSize = rs.getInt("sample_size");
+		this.postBuffer = rs.getInt("post_buffer");
+		this.loadTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Reads a snapshot from the current row of a result set selecting all columns of the blogs table
+	 *
+	 * @param rs Result set positioned on a row
+	 * @return the snapshot
+	 * @throws SQLException if a column can't be read
+	 */
+	public static BlogSettings from(ResultSet rs) throws SQLException
+	{
+		return new BlogSettings(rs);
+	}
+
+	private static String[] getStringArray(ResultSet rs, String column) throws SQLException
+	{
+		Array array = rs.getArray(column);
+		return array == null ? null : (String[]) array.getArray();
+	}
+
+	public String getId()
+	{
+		return id;
+	}
+
+	public String getUrl()
+	{
+		return url;
+	}
+
+	public String[] getPostType()
+	{
+		return postType == null ? null : postType.clone();
+	}
+
+	public String getPostSelect()
+	{
+		return postSelect;
+	}
+
+	public String getPostState()
+	{
+		return postState;
+	}
+
+	/**
+	 * @return the comment to add to reblogs, or null if none is set
+	 */
+	public String getPostComment()
+	{
+		// Older rows have the string "null" stored instead of an actual null
+		return postComment == null || postComment.isEmpty() || postComment.equals("null") ? null : postComment;
+	}
+
+	public String[] getPostTags()
+	{
+		return postTags == null ? null : postTags.clone();
+	}
+
+	public boolean getPreserveTags()
+	{
+		return preserveTags;
+	}
+
+	public boolean getCheckBlog()
+	{
+		return checkBlog;
+	}
+
+	public int getSampleSize()
+	{
+		return sampleSize;
+	}
+
+	public int getPostBuffer()
+	{
+		return postBuffer;
+	}
+
+	/**
+	 * @return the time the snapshot was read, in milliseconds
+	 */
+	public long getLoadTime()
+	{
+		return loadTime;
+	}
+}
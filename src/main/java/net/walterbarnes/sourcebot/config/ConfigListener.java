@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.config;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Listens for the notifications sent by the config table triggers, and passes them on to a handler
+ * <p>
+ * The listener holds its own connection outside of the pool, and reconnects if it's lost. The JDBC driver only reads
+ * notifications when a query is run, so the connection is polled with a trivial query.
+ */
+public class ConfigListener implements Runnable
+{
+	public static final String CHANNEL = "sourcebot_config";
+	private static final Logger logger = Logger.getLogger(ConfigListener.class.getName());
+	/**
+	 * Time between polls for notifications, in milliseconds
+	 */
+	private static final long POLL_INTERVAL = 1000;
+	/**
+	 * Time to wait before reconnecting after the connection is lost, in milliseconds
+	 */
+	private static final long RETRY_INTERVAL = 30000;
+
+	private final ConnectionPool pool;
+	private final IConfigChangeHandler handler;
+	private volatile boolean listening = false;
+
+	public ConfigListener(ConnectionPool pool, IConfigChangeHandler handler)
+	{
+		this.pool = pool;
+		this.handler = handler;
+	}
+
+	public boolean isListening()
+	{
+		return listening;
+	}
+
+	@Override
+	public void run()
+	{
+		while (!Thread.currentThread().isInterrupted())
+		{
+			try (Connection conn = pool.connect())
+			{
+				try (Statement listen = conn.createStatement())
+				{
+					listen.execute("LISTEN " + CHANNEL);
+				}
+				PGConnection pgConn = conn.unwrap(PGConnection.class);
+				setListening(true);
+				logger.info("Listening for config changes");
+
+				try (Statement poll = conn.createStatement())
+				{
+					while (!Thread.currentThread().isInterrupted())
+					{
+						poll.execute("SELECT 1");
+						PGNotification[] notifications = pgConn.getNotifications();
+						if (notifications != null)
+						{
+							for (PGNotification notification : notifications)
+							{
+								dispatch(notification.getParameter());
+							}
+						}
+						Thread.sleep(POLL_INTERVAL);
+					}
+				}
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			catch (SQLException e)
+			{
+				logger.log(Level.WARNING, "Lost config listener connection, falling back to polling", e);
+			}
+			finally
+			{
+				setListening(false);
+			}
+
+			try
+			{
+				Thread.sleep(RETRY_INTERVAL);
+			}
+			catch (InterruptedException e)
+			{
+				break;
+			}
+		}
+	}
+
+	private void dispatch(String payload)
+	{
+		// Payloads are "table:blog_id"
+		int i = payload == null ? -1 : payload.indexOf(':');
+		if (i < 0)
+		{
+			logger.warning("Ignoring malformed config notification '" + payload + "'");
+			return;
+		}
+		logger.fine("Config changed: " + payload);
+		try
+		{
+			handler.configChanged(payload.substring(0, i), payload.substring(i + 1));
+		}
+		catch (RuntimeException e)
+		{
+			logger.log(Level.SEVERE, e.getMessage(), e);
+		}
+	}
+
+	private void setListening(boolean listening)
+	{
+		if (this.listening == listening) return;
+		this.listening = listening;
+		handler.listeningChanged(listening);
+	}
+}
@@ -27,9 +27,7 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -149,6 +147,36 @@ public class Configuration
 		return json.get(key).getAsString();
 	}
 
+	public int getInt(String key, int def)
+	{
+		if (!json.has(key))
+		{
+			json.add(key, new JsonPrimitive(def));
+			changed = true;
+		}
+		return json.get(key).getAsInt();
+	}
+
+	public boolean getBoolean(String key, boolean def)
+	{
+		if (!json.has(key))
+		{
+			json.add(key, new JsonPrimitive(def));
+			changed = true;
+		}
+		return json.get(key).getAsBoolean();
+	}
+
+	/**
+	 * @return the keys set in this category, in the order they appear in the file
+	 */
+	public Set<String> getKeys()
+	{
+		Set<String> keys = new LinkedHashSet<>();
+		for (Map.Entry<String, JsonElement> e : json.entrySet()) keys.add(e.getKey());
+		return keys;
+	}
+
 	public void setString(String key, String val)
 	{
 		json.add(key, new JsonPrimitive(val));
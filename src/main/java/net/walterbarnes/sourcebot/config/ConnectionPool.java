@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.config;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * A bounded pool of database connections
+ * <p>
+ * Connections are checked before being handed out if they've been idle for a while, and replaced if they've gone
+ * bad, so a dropped connection doesn't stall the bot. Borrowed connections must be closed to return them to the pool,
+ * preferably with try-with-resources.
+ */
+public class ConnectionPool
+{
+	private static final Logger logger = Logger.getLogger(ConnectionPool.class.getName());
+	/**
+	 * Connections idle for longer than this are validated before being handed out
+	 */
+	private static final long VALIDATE_AFTER = 30000;
+
+	private final String url;
+	private final String user;
+	private final String pass;
+	private final long timeout;
+	private final Semaphore permits;
+	private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+	private volatile boolean closed = false;
+
+	/**
+	 * @param url     JDBC url to connect to
+	 * @param user    Database user
+	 * @param pass    Database password
+	 * @param size    Maximum number of connections
+	 * @param timeout Maximum time to wait for a connection, in milliseconds
+	 */
+	public ConnectionPool(String url, String user, String pass, int size, long timeout)
+	{
+		this.url = url;
+		this.user = user;
+		this.pass = pass;
+		this.timeout = timeout;
+		this.permits = new Semaphore(size, true);
+	}
+
+	/**
+	 * Borrows a connection, waiting for one to be returned if the pool is at its limit
+	 *
+	 * @return a connection, to be closed when done with
+	 * @throws SQLException if no connection could be made, or none became available in time
+	 */
+	public PooledConnection borrow() throws SQLException
+	{
+		if (closed) throw new SQLException("Connection pool is closed");
+		try
+		{
+			if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS))
+			{
+				throw new SQLException("Timed out waiting for a database connection");
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a database connection", e);
+		}
+
+		try
+		{
+			PooledConnection conn;
+			while ((conn = idle.pollFirst()) != null)
+			{
+				if (conn.isUsable(VALIDATE_AFTER))
+				{
+					conn.borrowed();
+					return conn;
+				}
+				logger.warning("Dropping broken database connection");
+				conn.closePhysical();
+			}
+			return new PooledConnection(this, DriverManager.getConnection(url, user, pass));
+		}
+		catch (SQLException | RuntimeException e)
+		{
+			permits.release();
+			throw e;
+		}
+	}
+
+	void release(PooledConnection conn)
+	{
+		if (closed || conn.isBroken())
+		{
+			conn.closePhysical();
+		}
+		else
+		{
+			// Most recently used first, so idle connections at the back can time out server side without being used
+			idle.addFirst(conn);
+		}
+		permits.release();
+	}
+
+	/**
+	 * Closes all idle connections, connections currently borrowed are closed when they're returned
+	 */
+	public void close()
+	{
+		closed = true;
+		PooledConnection conn;
+		while ((conn = idle.pollFirst()) != null) conn.closePhysical();
+	}
+
+	/**
+	 * Opens a connection outside of the pool, for things that need to hold on to one, like LISTEN
+	 *
+	 * @return a new connection
+	 * @throws SQLException if the connection fails
+	 */
+	public Connection connect() throws SQLException
+	{
+		return DriverManager.getConnection(url, user, pass);
+	}
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.config;
+
+/**
+ * Receives change notifications from a {@link ConfigListener}
+ */
+public interface IConfigChangeHandler
+{
+	/**
+	 * Called when rows belonging to a blog change
+	 *
+	 * @param table  Table that changed, one of blogs, search_inclusions, search_exclusions or spam_rules
+	 * @param blogId Id of the blog the changed rows belong to
+	 */
+	void configChanged(String table, String blogId);
+
+	/**
+	 * Called when the listener starts or stops receiving notifications, changes may have been missed while it wasn't,
+	 * so everything should be reloaded when this is called
+	 *
+	 * @param listening Whether notifications are now being received
+	 */
+	void listeningChanged(boolean listening);
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.config;
+
+import net.walterbarnes.sourcebot.metrics.Histogram;
+import net.walterbarnes.sourcebot.metrics.Metrics;
+import net.walterbarnes.sourcebot.trace.RunTrace;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A connection borrowed from a {@link ConnectionPool}, with a cache of prepared statements
+ * <p>
+ * Statements handed out by the connection time each execution in the statement metrics, named after the statement's
+ * command and table.
+ * <p>
+ * A connection is only ever used by one thread at a time, so statements from the cache must not be kept after the
+ * connection has been closed
+ */
+public class PooledConnection implements AutoCloseable
+{
+	private static final Logger logger = Logger.getLogger(PooledConnection.class.getName());
+
+	private final ConnectionPool pool;
+	private final Connection conn;
+	private final Map<String, PreparedStatement> statements = new HashMap<>();
+	private long lastUsed = System.currentTimeMillis();
+	private boolean broken = false;
+	private volatile boolean released = false;
+
+	PooledConnection(ConnectionPool pool, Connection conn)
+	{
+		this.pool = pool;
+		this.conn = conn;
+	}
+
+	/**
+	 * Gets a prepared statement for the query, reusing one prepared earlier on this connection if there is one
+	 *
+	 * @param sql Query to prepare
+	 * @return the statement, with its parameters cleared
+	 * @throws SQLException if the statement can't be prepared
+	 */
+	public PreparedStatement prepare(String sql) throws SQLException
+	{
+		checkReleased();
+		PreparedStatement stmt = statements.get(sql);
+		try
+		{
+			if (stmt == null)
+			{
+				stmt = timed(conn.prepareStatement(sql), statementName(sql));
+				statements.put(sql, stmt);
+			}
+			else
+			{
+				stmt.clearParameters();
+			}
+			return stmt;
+		}
+		catch (SQLException e)
+		{
+			checkBroken(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Names a statement for the metrics by its command and the table it works on, like {@code select_blogs}
+	 *
+	 * @param sql Statement to name
+	 * @return the name
+	 */
+	static String statementName(String sql)
+	{
+		String[] words = sql.trim().toLowerCase(Locale.ROOT).split("\\s+");
+		String command = words[0];
+		String keyword;
+		switch (command)
+		{
+			case "insert":
+				keyword = "into";
+				break;
+			case "update":
+				return words.length > 1 ? command + "_" + words[1] : command;
+			default:
+				keyword = "from";
+		}
+		for (int i = 1; i < words.length - 1; i++)
+		{
+			if (words[i].equals(keyword)) return command + "_" + words[i + 1].replaceAll("[^a-z0-9_].*", "");
+		}
+		return command;
+	}
+
+	private static Object call(PreparedStatement stmt, Method method, Object[] args) throws Throwable
+	{
+		try
+		{
+			return method.invoke(stmt, args);
+		}
+		catch (InvocationTargetException e)
+		{
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Wraps a statement so its executions are timed, and a connection failure while executing marks the connection as
+	 * broken
+	 */
+	private PreparedStatement timed(final PreparedStatement stmt, String name)
+	{
+		final Histogram.Child timer = Metrics.DB_STATEMENTS.labels(name);
+		return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+				new Class<?>[]{PreparedStatement.class}, new InvocationHandler()
+				{
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+					{
+						if (method.getDeclaringClass() != Object.class) checkReleased();
+						if (!method.getName().startsWith("execute")) return call(stmt, method, args);
+						long start = System.nanoTime();
+						try
+						{
+							return call(stmt, method, args);
+						}
+						catch (SQLException e)
+						{
+							checkBroken(e);
+							throw e;
+						}
+						finally
+						{
+							long nanos = System.nanoTime() - start;
+							timer.observeNanos(nanos);
+							RunTrace.dbCall(nanos);
+						}
+					}
+				});
+	}
+
+	/**
+	 * Makes sure the connection hasn't been returned to the pool, as another thread may be using it
+	 *
+	 * @throws SQLException if the connection has been returned
+	 */
+	private void checkReleased() throws SQLException
+	{
+		if (released) throw new SQLException("Connection has been returned to the pool");
+	}
+
+	/**
+	 * Marks the connection as broken if the exception was caused by a connection failure, so it isn't returned to the
+	 * pool
+	 *
+	 * @param e Exception to check
+	 */
+	private void checkBroken(SQLException e)
+	{
+		// SQLState class 08 is connection exceptions, batches put the cause on the next exception
+		for (SQLException ex = e; ex != null; ex = ex.getNextException())
+		{
+			if (ex.getSQLState() != null && ex.getSQLState().startsWith("08")) broken = true;
+		}
+	}
+
+	boolean isBroken()
+	{
+		try
+		{
+			return broken || conn.isClosed();
+		}
+		catch (SQLException e)
+		{
+			return true;
+		}
+	}
+
+	boolean isUsable(long validateAfter)
+	{
+		if (isBroken()) return false;
+		if (System.currentTimeMillis() - lastUsed < validateAfter) return true;
+		try
+		{
+			return conn.isValid(5);
+		}
+		catch (SQLException e)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Marks the connection as handed out by the pool
+	 */
+	void borrowed()
+	{
+		released = false;
+	}
+
+	/**
+	 * Returns the connection to the pool, closing it again does nothing
+	 */
+	@Override
+	public void close()
+	{
+		if (released) return;
+		released = true;
+		lastUsed = System.currentTimeMillis();
+		pool.release(this);
+	}
+
+	void closePhysical()
+	{
+		try
+		{
+			conn.close();
+		}
+		catch (SQLException e)
+		{
+			logger.log(Level.FINE, e.getMessage(), e);
+		}
+		statements.clear();
+	}
+}
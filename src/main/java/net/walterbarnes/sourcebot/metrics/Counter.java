@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A count that only goes up
+ */
+public class Counter extends Metric<Counter.Child>
+{
+	public Counter(String name, String help, String... labelNames)
+	{
+		super(name, help, labelNames);
+	}
+
+	@Override
+	protected String getType()
+	{
+		return "counter";
+	}
+
+	@Override
+	protected Child newChild()
+	{
+		return new Child();
+	}
+
+	@Override
+	protected void writeChild(StringBuilder out, String labels, Child child)
+	{
+		writeSample(out, "", labels, null, child.get());
+	}
+
+	public static class Child
+	{
+		private final AtomicLong value = new AtomicLong();
+
+		public void inc()
+		{
+			value.incrementAndGet();
+		}
+
+		public void inc(long amount)
+		{
+			if (amount < 0) throw new IllegalArgumentException("Counters can't go down");
+			value.addAndGet(amount);
+		}
+
+		public long get()
+		{
+			return value.get();
+		}
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.metrics;
+
+/**
+ * A value that can go up and down, either set directly or read from a source each time the metrics are scraped
+ */
+public class Gauge extends Metric<Gauge.Child>
+{
+	public Gauge(String name, String help, String... labelNames)
+	{
+		super(name, help, labelNames);
+	}
+
+	@Override
+	protected String getType()
+	{
+		return "gauge";
+	}
+
+	@Override
+	protected Child newChild()
+	{
+		return new Child();
+	}
+
+	@Override
+	protected void writeChild(StringBuilder out, String labels, Child child)
+	{
+		writeSample(out, "", labels, null, child.get());
+	}
+
+	/**
+	 * Supplies a gauge's value when it's scraped
+	 */
+	public interface ISource
+	{
+		double getValue();
+	}
+
+	public static class Child
+	{
+		private volatile double value;
+		private volatile ISource source;
+
+		public void set(double value)
+		{
+			this.value = value;
+		}
+
+		/**
+		 * Reads the value from a source from now on, instead of the value last set
+		 *
+		 * @param source Source of the value
+		 */
+		public void setSource(ISource source)
+		{
+			this.source = source;
+		}
+
+		public double get()
+		{
+			ISource s = source;
+			return s == null ? value : s.getValue();
+		}
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts observed durations into fixed buckets, so percentiles can be worked out from the scraped buckets
+ * <p>
+ * Durations are exported in seconds, as Prometheus expects
+ */
+public class Histogram extends Metric<Histogram.Child>
+{
+	/**
+	 * Bucket bounds in seconds, covering everything from a cached lookup to a slow blog run
+	 */
+	private static final double[] DEFAULT_BUCKETS = {0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5,
+			1, 2.5, 5, 10, 30, 60, 120, 300};
+
+	private final double[] buckets;
+	private final long[] bucketNanos;
+
+	public Histogram(String name, String help, String... labelNames)
+	{
+		this(DEFAULT_BUCKETS, name, help, labelNames);
+	}
+
+	/**
+	 * @param buckets    Upper bounds of the buckets in seconds, in increasing order
+	 * @param name       Name of the metric
+	 * @param help       Description of the metric
+	 * @param labelNames Names of the metric's labels
+	 */
+	public Histogram(double[] buckets, String name, String help, String... labelNames)
+	{
+		super(name, help, labelNames);
+		this.buckets = buckets.clone();
+		this.bucketNanos = new long[buckets.length];
+		for (int i = 0; i < buckets.length; i++) bucketNanos[i] = (long) (buckets[i] * 1e9);
+	}
+
+	@Override
+	protected String getType()
+	{
+		return "histogram";
+	}
+
+	@Override
+	protected Child newChild()
+	{
+		return new Child();
+	}
+
+	@Override
+	protected void writeChild(StringBuilder out, String labels, Child child)
+	{
+		long cumulative = 0;
+		for (int i = 0; i < buckets.length; i++)
+		{
+			cumulative += child.counts.get(i);
+			writeSample(out, "_bucket", labels, "le=\"" + format(buckets[i]) + "\"", cumulative);
+		}
+		cumulative += child.counts.get(buckets.length);
+		writeSample(out, "_bucket", labels, "le=\"+Inf\"", cumulative);
+		writeSample(out, "_sum", labels, null, child.sumNanos.get() / 1e9);
+		writeSample(out, "_count", labels, null, cumulative);
+	}
+
+	public class Child
+	{
+		private final AtomicLongArray counts = new AtomicLongArray(buckets.length + 1);
+		private final AtomicLong sumNanos = new AtomicLong();
+
+		/**
+		 * @param nanos Duration to record, in nanoseconds
+		 */
+		public void observeNanos(long nanos)
+		{
+			int i = 0;
+			while (i < bucketNanos.length && nanos > bucketNanos[i]) i++;
+			counts.incrementAndGet(i);
+			sumNanos.addAndGet(nanos);
+		}
+
+		/**
+		 * @param millis Duration to record, in milliseconds
+		 */
+		public void observeMillis(long millis)
+		{
+			observeNanos(millis * 1000000);
+		}
+
+		/**
+		 * Starts timing something, the time is recorded when the timer is closed
+		 *
+		 * @return the timer
+		 */
+		public Timer start()
+		{
+			return new Timer(this);
+		}
+
+		public long getCount()
+		{
+			long total = 0;
+			for (int i = 0; i < counts.length(); i++) total += counts.get(i);
+			return total;
+		}
+	}
+
+	/**
+	 * Times a block of code, for use with try-with-resources
+	 */
+	public static class Timer implements AutoCloseable
+	{
+		private final Child child;
+		private final long start = System.nanoTime();
+		private boolean stopped = false;
+
+		private Timer(Child child)
+		{
+			this.child = child;
+		}
+
+		/**
+		 * Records the time since the timer was started, only the first call has any effect
+		 *
+		 * @return the time recorded, in nanoseconds
+		 */
+		public long stop()
+		{
+			long nanos = System.nanoTime() - start;
+			if (!stopped)
+			{
+				stopped = true;
+				child.observeNanos(nanos);
+			}
+			return nanos;
+		}
+
+		@Override
+		public void close()
+		{
+			stop();
+		}
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.metrics;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Base for all metrics, a metric is a family of children, one for each combination of label values
+ *
+ * @param <C> Type of the children
+ */
+public abstract class Metric<C>
+{
+	private final String name;
+	private final String help;
+	private final String[] labelNames;
+	private final ConcurrentMap<List<String>, C> children = new ConcurrentHashMap<>();
+
+	protected Metric(String name, String help, String... labelNames)
+	{
+		this.name = name;
+		this.help = help;
+		this.labelNames = labelNames;
+	}
+
+	private static String escape(String value)
+	{
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	/**
+	 * Formats a value the way Prometheus expects
+	 */
+	protected static String format(double value)
+	{
+		if (value == Double.POSITIVE_INFINITY) return "+Inf";
+		if (value == Math.rint(value) && Math.abs(value) < 1e15) return Long.toString((long) value);
+		return Double.toString(value);
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * @return the metric type, as written in the TYPE line
+	 */
+	protected abstract String getType();
+
+	protected abstract C newChild();
+
+	/**
+	 * Writes one child's samples
+	 *
+	 * @param out    Output to append to
+	 * @param labels The child's labels, formatted as {@code name="value",...}, empty if it has none
+	 * @param child  Child to write
+	 */
+	protected abstract void writeChild(StringBuilder out, String labels, C child);
+
+	/**
+	 * Gets the child for the given label values, creating it if needed
+	 *
+	 * @param values One value for each of the metric's labels, in order
+	 * @return the child
+	 */
+	public C labels(String... values)
+	{
+		if (values.length != labelNames.length)
+		{
+			throw new IllegalArgumentException(String.format("%s takes %d labels, got %d", name, labelNames.length, values.length));
+		}
+		List<String> key = Arrays.asList(values);
+		C child = children.get(key);
+		if (child == null)
+		{
+			C created = newChild();
+			child = children.putIfAbsent(key, created);
+			if (child == null) child = created;
+		}
+		return child;
+	}
+
+	/**
+	 * Removes the child for the given label values, for things like blogs that have gone away
+	 *
+	 * @param values One value for each of the metric's labels, in order
+	 */
+	public void remove(String... values)
+	{
+		children.remove(Arrays.asList(values));
+	}
+
+	/**
+	 * Writes the metric in the Prometheus text format
+	 *
+	 * @param out Output to append to
+	 */
+	public void write(StringBuilder out)
+	{
+		out.append("# HELP ").append(name).append(' ').append(help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+		out.append("# TYPE ").append(name).append(' ').append(getType()).append('\n');
+		for (Map.Entry<List<String>, C> e : children.entrySet())
+		{
+			StringBuilder labels = new StringBuilder();
+			for (int i = 0; i < labelNames.length; i++)
+			{
+				if (i > 0) labels.append(',');
+				labels.append(labelNames[i]).append("=\"").append(escape(e.getKey().get(i))).append('"');
+			}
+			writeChild(out, labels.toString(), e.getValue());
+		}
+	}
+
+	/**
+	 * Writes a single sample line
+	 */
+	protected void writeSample(StringBuilder out, String suffix, String labels, String extraLabel, double value)
+	{
+		out.append(name).append(suffix);
+		if (!labels.isEmpty() || extraLabel != null)
+		{
+			out.append('{').append(labels);
+			if (extraLabel != null)
+			{
+				if (!labels.isEmpty()) out.append(',');
+				out.append(extraLabel);
+			}
+			out.append('}');
+		}
+		out.append(' ').append(format(value)).append('\n');
+	}
+}
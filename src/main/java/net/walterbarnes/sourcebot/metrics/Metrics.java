@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.metrics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * All of the bot's metrics, registered in one place so they're all exported together
+ */
+public final class Metrics
+{
+	private static final List<Metric<?>> registry = new CopyOnWriteArrayList<>();
+
+	public static final Histogram API_CALLS = register(new Histogram("sourcebot_api_call_seconds",
+			"Time taken by Tumblr API calls, not counting time waiting for quota", "method", "status"));
+	public static final Histogram TERM_SEARCHES = register(new Histogram("sourcebot_term_search_seconds",
+			"Time taken to search a term", "type"));
+	public static final Counter POSTS_SEARCHED = register(new Counter("sourcebot_posts_searched_total",
+			"Posts run through the filters", "type"));
+	public static final Histogram FILTER_STAGES = register(new Histogram("sourcebot_filter_stage_seconds",
+			"Time spent in each filter stage during one search", "stage"));
+	public static final Counter FILTER_REJECTS = register(new Counter("sourcebot_filter_rejected_total",
+			"Posts rejected by each filter stage", "stage"));
+	public static final Histogram DB_STATEMENTS = register(new Histogram("sourcebot_db_statement_seconds",
+			"Time taken to execute database statements", "statement"));
+	public static final Histogram REBLOGS = register(new Histogram("sourcebot_reblog_seconds",
+			"Time taken by reblog attempts", "outcome"));
+	public static final Histogram BLOG_RUNS = register(new Histogram("sourcebot_blog_run_seconds",
+			"Time taken by a full run of a blog"));
+	public static final Gauge CACHE_ENTRIES = register(new Gauge("sourcebot_cache_entries",
+			"Entries in each shared cache", "cache"));
+	public static final Gauge QUEUE_DEPTH = register(new Gauge("sourcebot_queue_depth",
+			"Posts in each blog's queue or drafts, as last counted", "blog"));
+	public static final Gauge SEEN_POSTS = register(new Gauge("sourcebot_seen_posts",
+			"Posts each blog has already reblogged", "blog"));
+
+	private Metrics() {}
+
+	/**
+	 * Adds a metric to the registry
+	 *
+	 * @param metric Metric to add
+	 * @param <T>    Type of the metric
+	 * @return {@code metric}
+	 */
+	public static <T extends Metric<?>> T register(T metric)
+	{
+		for (Metric<?> m : registry)
+		{
+			if (m.getName().equals(metric.getName()))
+			{
+				throw new IllegalArgumentException("Metric " + metric.getName() + " is already registered");
+			}
+		}
+		registry.add(metric);
+		return metric;
+	}
+
+	/**
+	 * @return every registered metric in the Prometheus text format
+	 */
+	public static String scrape()
+	{
+		StringBuilder out = new StringBuilder();
+		for (Metric<?> metric : registry) metric.write(out);
+		return out.toString();
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Serves the metrics at /metrics in the Prometheus text format
+ */
+public class MetricsServer
+{
+	private static final Logger logger = Logger.getLogger(MetricsServer.class.getName());
+	private final HttpServer server;
+
+	/**
+	 * @param host Address to listen on
+	 * @param port Port to listen on
+	 * @throws IOException if the port can't be bound
+	 */
+	public MetricsServer(String host, int port) throws IOException
+	{
+		server = HttpServer.create(new InetSocketAddress(host, port), 0);
+		server.createContext("/metrics", new HttpHandler()
+		{
+			@Override
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				try
+				{
+					byte[] body = Metrics.scrape().getBytes(StandardCharsets.UTF_8);
+					exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+					exchange.sendResponseHeaders(200, body.length);
+					try (OutputStream out = exchange.getResponseBody())
+					{
+						out.write(body);
+					}
+				}
+				catch (RuntimeException e)
+				{
+					logger.log(Level.WARNING, "Unable to serve metrics", e);
+					exchange.sendResponseHeaders(500, -1);
+				}
+				finally
+				{
+					exchange.close();
+				}
+			}
+		});
+		server.setExecutor(Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "Metrics Server");
+				t.setDaemon(true);
+				return t;
+			}
+		}));
+	}
+
+	public void start()
+	{
+		server.start();
+		logger.info("Serving metrics on http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/metrics");
+	}
+
+	public void stop()
+	{
+		server.stop(0);
+	}
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.search;
+
+import com.tumblr.jumblr.types.*;
+
+import java.util.*;
+
+/**
+ * Matches post text against every blacklisted tag at once, using an Aho-Corasick automaton compiled from the terms
+ * <p>
+ * A matcher is immutable once built, and safe to share between threads. Rules that require some of the blacklisted
+ * tags can get a view with those terms switched off through {@link #without(String...)}, which shares the automaton.
+ */
+public class ExclusionMatcher
+{
+	public static final ExclusionMatcher EMPTY = new ExclusionMatcher(Collections.<String>emptyList());
+
+	private final Automaton automaton;
+	private final boolean[] disabled;
+
+	public ExclusionMatcher(Collection<String> terms)
+	{
+		this(new Automaton(terms), null);
+	}
+
+	private ExclusionMatcher(Automaton automaton, boolean[] disabled)
+	{
+		this.automaton = automaton;
+		this.disabled = disabled;
+	}
+
+	/**
+	 * Creates a view of this matcher which ignores the given terms
+	 *
+	 * @param terms Terms to ignore, may be null
+	 * @return a matcher sharing this one's automaton
+	 */
+	public ExclusionMatcher without(String... terms)
+	{
+		if (terms == null || terms.length == 0) return this;
+		boolean[] mask = disabled == null ? new boolean[automaton.terms.length] : disabled.clone();
+		boolean changed = false;
+		for (String term : terms)
+		{
+			Integer i = automaton.index.get(term);
+			if (i != null && !mask[i])
+			{
+				mask[i] = true;
+				changed = true;
+			}
+		}
+		return changed ? new ExclusionMatcher(automaton, mask) : this;
+	}
+
+	public boolean isEmpty()
+	{
+		return automaton.terms.length == 0;
+	}
+
+	/**
+	 * @return the number of terms compiled into the matcher
+	 */
+	public int size()
+	{
+		return automaton.terms.length;
+	}
+
+	/**
+	 * Checks whether any enabled term occurs in the text
+	 *
+	 * @param text Text to scan, may be null
+	 * @return true if a term was found
+	 */
+	public boolean matches(String text)
+	{
+		if (text == null || isEmpty()) return false;
+		int state = 0;
+		for (int i = 0, len = text.length(); i < len; i++)
+		{
+			state = automaton.step(state, text.charAt(i));
+			int[] out = automaton.output[state];
+			if (out != null)
+			{
+				if (disabled == null) return true;
+				for (int t : out)
+				{
+					if (!disabled[t]) return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks whether any of the tags is exactly equal to an enabled term
+	 *
+	 * @param tags Tags to check, may be null
+	 * @return true if a tag matched
+	 */
+	public boolean matchesTag(Collection<String> tags)
+	{
+		if (tags == null || isEmpty()) return false;
+		for (String tag : tags)
+		{
+			Integer i = automaton.index.get(tag);
+			if (i != null && (disabled == null || !disabled[i])) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Checks a post's text fields and tags against the enabled terms, text fields are searched for the terms anywhere
+	 * in them, while tags have to match a term exactly
+	 *
+	 * @param post Post to check
+	 * @return true if the post contains a blacklisted term
+	 */
+	public boolean matches(Post post)
+	{
+		if (isEmpty()) return false;
+
+		if (post instanceof TextPost)
+		{
+			TextPost p = (TextPost) post;
+			if (matches(p.getTitle()) || matches(p.getBody())) return true;
+		}
+		else if (post instanceof PhotoPost)
+		{
+			PhotoPost p = (PhotoPost) post;
+			if (matches(p.getCaption())) return true;
+		}
+		else if (post instanceof QuotePost)
+		{
+			QuotePost p = (QuotePost) post;
+			if (matches(p.getSource()) || matches(p.getText())) return true;
+		}
+		else if (post instanceof LinkPost)
+		{
+			LinkPost p = (LinkPost) post;
+			if (matches(p.getTitle()) || matches(p.getDescription())) return true;
+		}
+		else if (post instanceof ChatPost)
+		{
+			ChatPost p = (ChatPost) post;
+			if (matches(p.getTitle()) || matches(p.getBody())) return true;
+			if (p.getDialogue() != null)
+			{
+				for (Dialogue line : p.getDialogue())
+				{
+					if (matches(line.getPhrase()) || matches(line.getLabel()) || matches(line.getName())) return true;
+				}
+			}
+		}
+		else if (post instanceof AudioPost)
+		{
+			AudioPost p = (AudioPost) post;
+			if (matches(p.getCaption())) return true;
+		}
+		else if (post instanceof VideoPost)
+		{
+			VideoPost p = (VideoPost) post;
+			if (matches(p.getCaption())) return true;
+		}
+		else if (post instanceof AnswerPost)
+		{
+			AnswerPost p = (AnswerPost) post;
+			if (matches(p.getAnswer()) || matches(p.getQuestion())) return true;
+		}
+		else if (post instanceof PostcardPost)
+		{
+			PostcardPost p = (PostcardPost) post;
+			if (matches(p.getBody())) return true;
+		}
+
+		return matchesTag(post.getTags());
+	}
+
+	/**
+	 * The compiled trie, with failure links and the outputs of each state flattened so matching never has to walk
+	 * the failure chain to find them
+	 */
+	private static class Automaton
+	{
+		private final String[] terms;
+		private final Map<String, Integer> index = new HashMap<>();
+		private final char[][] keys;
+		private final int[][] next;
+		private final int[] fail;
+		private final int[][] output;
+
+		private Automaton(Collection<String> input)
+		{
+			List<String> list = new ArrayList<>();
+			for (String term : input)
+			{
+				// An empty term would match every post, so it is never useful as an exclusion
+				if (term == null || term.isEmpty() || index.containsKey(term)) continue;
+				index.put(term, list.size());
+				list.add(term);
+			}
+			terms = list.toArray(new String[list.size()]);
+
+			// Build the trie, each state's transitions are kept as a sorted array of characters alongside the states
+			// they lead to
+			List<char[]> keyList = new ArrayList<>();
+			List<int[]> nextList = new ArrayList<>();
+			List<List<Integer>> out = new ArrayList<>();
+			keyList.add(new char[0]);
+			nextList.add(new int[0]);
+			out.add(new ArrayList<Integer>());
+			for (int t = 0; t < terms.length; t++)
+			{
+				int state = 0;
+				for (char c : terms[t].toCharArray())
+				{
+					char[] k = keyList.get(state);
+					int[] nx = nextList.get(state);
+					int i = Arrays.binarySearch(k, c);
+					if (i >= 0)
+					{
+						state = nx[i];
+						continue;
+					}
+
+					int n = keyList.size();
+					keyList.add(new char[0]);
+					nextList.add(new int[0]);
+					out.add(new ArrayList<Integer>());
+
+					int pos = -(i + 1);
+					char[] nk = new char[k.length + 1];
+					int[] nn = new int[nx.length + 1];
+					System.arraycopy(k, 0, nk, 0, pos);
+					System.arraycopy(nx, 0, nn, 0, pos);
+					nk[pos] = c;
+					nn[pos] = n;
+					System.arraycopy(k, pos, nk, pos + 1, k.length - pos);
+					System.arraycopy(nx, pos, nn, pos + 1, nx.length - pos);
+					keyList.set(state, nk);
+					nextList.set(state, nn);
+					state = n;
+				}
+				out.get(state).add(t);
+			}
+			keys = keyList.toArray(new char[keyList.size()][]);
+			next = nextList.toArray(new int[nextList.size()][]);
+
+			// Breadth first pass to set the failure links, merging each state's outputs with its failure state's
+			fail = new int[keys.length];
+			output = new int[keys.length][];
+			Deque<Integer> queue = new ArrayDeque<>();
+			for (int n : next[0]) queue.add(n);
+			while (!queue.isEmpty())
+			{
+				int state = queue.poll();
+				char[] k = keys[state];
+				int[] nx = next[state];
+				for (int i = 0; i < k.length; i++)
+				{
+					int child = nx[i];
+					fail[child] = step(fail[state], k[i]);
+					out.get(child).addAll(out.get(fail[child]));
+					queue.add(child);
+				}
+			}
+			for (int s = 0; s < keys.length; s++)
+			{
+				List<Integer> o = out.get(s);
+				if (o.isEmpty()) continue;
+				output[s] = new int[o.size()];
+				for (int i = 0; i < o.size(); i++) output[s][i] = o.get(i);
+			}
+		}
+
+		private int child(int state, char c)
+		{
+			char[] k = keys[state];
+			int i;
+			if (k.length < 8)
+			{
+				for (i = 0; i < k.length; i++)
+				{
+					if (k[i] == c) return next[state][i];
+				}
+				return -1;
+			}
+			i = Arrays.binarySearch(k, c);
+			return i < 0 ? -1 : next[state][i];
+		}
+
+		private int step(int state, char c)
+		{
+			int n;
+			while ((n = child(state, c)) < 0)
+			{
+				if (state == 0) return 0;
+				state = fail[state];
+			}
+			return n;
+		}
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.search;
+
+import com.tumblr.jumblr.types.Post;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The ways posts can be picked from search results, as set by a blog's or rule's post_select
+ */
+public enum PostOrder
+{
+	TOP("top")
+			{
+				@Override
+				public long getKey(Post post)
+				{
+					Long notes = post.getNoteCount();
+					return notes == null ? 0 : notes;
+				}
+
+				@Override
+				public double getWeight(Post post)
+				{
+					// Note counts are heavy tailed, so weigh by their log to stop a few viral posts crowding out the rest
+					return Math.log(2 + getKey(post));
+				}
+			},
+	RECENT("recent")
+			{
+				@Override
+				public long getKey(Post post)
+				{
+					Long time = post.getTimestamp();
+					return time == null ? 0 : time;
+				}
+
+				@Override
+				public double getWeight(Post post)
+				{
+					// Halve the weight for every day old
+					double age = Math.max(0, System.currentTimeMillis() / 1000 - getKey(post));
+					return Math.pow(0.5, age / (24 * 60 * 60));
+				}
+			};
+
+	private final String name;
+
+	PostOrder(String name)
+	{
+		this.name = name;
+	}
+
+	/**
+	 * Gets an order by name, falling back to {@link #RECENT} for unknown names
+	 *
+	 * @param name Name of the order
+	 * @return the order
+	 */
+	public static PostOrder getOrder(String name)
+	{
+		for (PostOrder order : values())
+		{
+			if (order.name.equals(name)) return order;
+		}
+		return RECENT;
+	}
+
+	/**
+	 * @param post Post to get the key of
+	 * @return the post's sort key, higher keys are picked first
+	 */
+	public abstract long getKey(Post post);
+
+	/**
+	 * @param post Post to get the weight of
+	 * @return the post's weight when picking posts at random, relative to other posts
+	 */
+	public abstract double getWeight(Post post);
+
+	/**
+	 * Picks the best {@code n} posts
+	 *
+	 * @param posts Posts to pick from
+	 * @param n     Number of posts to pick
+	 * @return the picked posts, best first
+	 */
+	public List<Post> select(Collection<Post> posts, int n)
+	{
+		TopK<Post> top = new TopK<>(n);
+		for (Post post : posts)
+		{
+			top.offer(getKey(post), post);
+		}
+		return top.toList();
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	@Override
+	public String toString()
+	{
+		return name;
+	}
+}
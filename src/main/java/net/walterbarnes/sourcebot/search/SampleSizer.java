@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.search;
+
+/**
+ * Decides how deep to search a term and how often, from how many posts the term has yielded in the past
+ * <p>
+ * Terms that rarely produce a usable post are searched less often, and never paged deeper than their yield suggests
+ * is needed to reach the sample size, while high yield terms are searched every run to keep their caches warm.
+ */
+public class SampleSizer
+{
+	/**
+	 * Number of recorded searches needed before a term's history is trusted
+	 */
+	private static final int MIN_RUNS = 3;
+	/**
+	 * Extra depth allowed over what the term's yield predicts, to allow for variation between runs
+	 */
+	private static final double DEPTH_MARGIN = 1.5;
+
+	private final int minDepth;
+	private final int maxDepth;
+	private final long timeBudget;
+	private final double targetYield;
+	private final long baseInterval;
+	private final long maxInterval;
+
+	/**
+	 * @param minDepth     Fewest posts to search per run
+	 * @param maxDepth     Most posts to search per run
+	 * @param timeBudget   Time a search should take at most, in milliseconds
+	 * @param targetYield  Yield at or above which a term is searched every run
+	 * @param baseInterval Time between searches of a term yielding half the target, in milliseconds, lower yields wait
+	 *                     proportionally longer
+	 * @param maxInterval  Longest time between searches of a term, in milliseconds
+	 */
+	public SampleSizer(int minDepth, int maxDepth, long timeBudget, double targetYield, long baseInterval, long maxInterval)
+	{
+		this.minDepth = minDepth;
+		this.maxDepth = maxDepth;
+		this.timeBudget = timeBudget;
+		this.targetYield = targetYield;
+		this.baseInterval = baseInterval;
+		this.maxInterval = maxInterval;
+	}
+
+	/**
+	 * Plans a search of a term
+	 *
+	 * @param stats      The term's history, may be null
+	 * @param sampleSize Number of posts wanted
+	 * @return the plan
+	 */
+	public Plan plan(TermStats stats, int sampleSize)
+	{
+		if (stats == null || stats.getRuns() < MIN_RUNS) return new Plan(sampleSize, maxDepth, 0);
+
+		if (stats.getSelected() == 0) return new Plan(sampleSize, minDepth, maxInterval);
+
+		double yield = stats.getYield();
+		long depth = (long) Math.ceil(sampleSize / yield * DEPTH_MARGIN);
+
+		// Slow terms get cut off at the time budget, however deep their yield says they'd need to go
+		if (stats.getTimePerPost() > 0) depth = Math.min(depth, (long) (timeBudget / stats.getTimePerPost()));
+		depth = Math.max(minDepth, Math.min(maxDepth, depth));
+
+		long interval = 0;
+		if (yield < targetYield)
+		{
+			interval = Math.min(maxInterval, (long) (baseInterval * (targetYield / yield) / 2));
+		}
+		return new Plan(sampleSize, (int) depth, interval);
+	}
+
+	public static class Plan
+	{
+		private final int postNum;
+		private final int maxSearched;
+		private final long interval;
+
+		private Plan(int postNum, int maxSearched, long interval)
+		{
+			this.postNum = postNum;
+			this.maxSearched = maxSearched;
+			this.interval = interval;
+		}
+
+		/**
+		 * @return the number of posts to select
+		 */
+		public int getPostNum()
+		{
+			return postNum;
+		}
+
+		/**
+		 * @return the most posts to search through before giving up
+		 */
+		public int getMaxSearched()
+		{
+			return maxSearched;
+		}
+
+		/**
+		 * @return the time to wait before searching the term again, in milliseconds
+		 */
+		public long getInterval()
+		{
+			return interval;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("select %d, search up to %d, refresh after %d s", postNum, maxSearched, interval / 1000);
+		}
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.search;
+
+/**
+ * The range of post timestamps a search term has already processed, so later searches only need to fetch posts
+ * outside of it
+ */
+public class SearchWatermark
+{
+	private final long newest;
+	private final long oldest;
+	private final long started;
+
+	/**
+	 * @param newest  Timestamp of the newest post processed, in seconds
+	 * @param oldest  Timestamp of the oldest post processed, in seconds
+	 * @param started Time the range was first started, in milliseconds
+	 */
+	public SearchWatermark(long newest, long oldest, long started)
+	{
+		this.newest = newest;
+		this.oldest = oldest;
+		this.started = started;
+	}
+
+	public long getNewest()
+	{
+		return newest;
+	}
+
+	public long getOldest()
+	{
+		return oldest;
+	}
+
+	public long getStarted()
+	{
+		return started;
+	}
+}
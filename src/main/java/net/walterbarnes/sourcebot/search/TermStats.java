@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.search;
+
+/**
+ * A search term's totals from the search_stats table over the recent past
+ */
+public class TermStats
+{
+	private final int runs;
+	private final long searched;
+	private final long selected;
+	private final double avgTime;
+
+	/**
+	 * @param runs     Number of searches recorded
+	 * @param searched Total posts searched
+	 * @param selected Total posts selected
+	 * @param avgTime  Average time taken by a search, in milliseconds
+	 */
+	public TermStats(int runs, long searched, long selected, double avgTime)
+	{
+		this.runs = runs;
+		this.searched = searched;
+		this.selected = selected;
+		this.avgTime = avgTime;
+	}
+
+	public int getRuns()
+	{
+		return runs;
+	}
+
+	public long getSearched()
+	{
+		return searched;
+	}
+
+	public long getSelected()
+	{
+		return selected;
+	}
+
+	public double getAvgTime()
+	{
+		return avgTime;
+	}
+
+	/**
+	 * @return the fraction of searched posts that were selected, or 0 if nothing has been searched
+	 */
+	public double getYield()
+	{
+		return searched == 0 ? 0 : (double) selected / searched;
+	}
+
+	/**
+	 * @return the average time taken per post searched, in milliseconds, or 0 if nothing has been searched
+	 */
+	public double getTimePerPost()
+	{
+		return searched == 0 ? 0 : avgTime * runs / searched;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("%d runs, %d/%d selected (%.2f%%), %.0f ms avg", runs, selected, searched, getYield() * 100,
+				avgTime);
+	}
+}
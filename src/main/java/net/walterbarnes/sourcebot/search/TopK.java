@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Keeps the {@code k} items with the highest keys out of everything offered to it, using a bounded min-heap over
+ * primitive keys
+ * <p>
+ * Items can be offered as they arrive, each offer is O(log k), and the items are only sorted when they're read out.
+ * Between items with equal keys, the one offered first is kept. Not thread safe.
+ *
+ * @param <T> Type of item
+ */
+public class TopK<T>
+{
+	private final long[] keys;
+	private final Object[] items;
+	private int size = 0;
+
+	public TopK(int k)
+	{
+		if (k < 0) throw new IllegalArgumentException("k must not be negative");
+		this.keys = new long[k];
+		this.items = new Object[k];
+	}
+
+	/**
+	 * Offers an item, it's kept if it's among the highest {@code k} seen so far
+	 *
+	 * @param key  Item's key
+	 * @param item Item
+	 * @return true if the item was kept
+	 */
+	public boolean offer(long key, T item)
+	{
+		if (size < keys.length)
+		{
+			keys[size] = key;
+			items[size] = item;
+			siftUp(size++);
+			return true;
+		}
+		if (size == 0 || key <= keys[0]) return false;
+		keys[0] = key;
+		items[0] = item;
+		siftDown(0);
+		return true;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return the lowest key currently kept, items with a key at or below this are rejected once full
+	 */
+	public long getMinKey()
+	{
+		if (size == 0) throw new IllegalStateException("Empty");
+		return keys[0];
+	}
+
+	/**
+	 * @return the kept items, highest key first
+	 */
+	@SuppressWarnings ("unchecked")
+	public List<T> toList()
+	{
+		// Sort indices by key without disturbing the heap, so more items can still be offered afterwards
+		Integer[] order = new Integer[size];
+		for (int i = 0; i < size; i++) order[i] = i;
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer a, Integer b)
+			{
+				return Long.compare(keys[b], keys[a]);
+			}
+		});
+		List<T> out = new ArrayList<>(size);
+		for (Integer i : order) out.add((T) items[i]);
+		return out;
+	}
+
+	public void clear()
+	{
+		Arrays.fill(items, 0, size, null);
+		size = 0;
+	}
+
+	private void siftUp(int i)
+	{
+		long key = keys[i];
+		Object item = items[i];
+		while (i > 0)
+		{
+			int parent = (i - 1) >>> 1;
+			if (keys[parent] <= key) break;
+			keys[i] = keys[parent];
+			items[i] = items[parent];
+			i = parent;
+		}
+		keys[i] = key;
+		items[i] = item;
+	}
+
+	private void siftDown(int i)
+	{
+		long key = keys[i];
+		Object item = items[i];
+		int half = size >>> 1;
+		while (i < half)
+		{
+			int child = 2 * i + 1;
+			if (child + 1 < size && keys[child + 1] < keys[child]) child++;
+			if (key <= keys[child]) break;
+			keys[i] = keys[child];
+			items[i] = items[child];
+			i = child;
+		}
+		keys[i] = key;
+		items[i] = item;
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.search;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Draws items at random without replacement, with each item's chance of being drawn proportional to its weight
+ * <p>
+ * Uses the Efraimidis-Spirakis method, every item is given a random key of {@code u^(1/w)} when it's added, and items
+ * are drawn in order of their keys, so drawing everything takes O(n log n) no matter how many draws get thrown away.
+ * Not thread safe.
+ *
+ * @param <T> Type of item
+ */
+public class WeightedSampler<T>
+{
+	/**
+	 * Weights are clamped to at least this, so zero weight items can still be drawn once everything else is gone
+	 */
+	private static final double MIN_WEIGHT = 1e-9;
+
+	private final Random random;
+	private final PriorityQueue<Keyed<T>> queue = new PriorityQueue<>();
+
+	public WeightedSampler(Random random)
+	{
+		this.random = random;
+	}
+
+	/**
+	 * Adds an item to be drawn
+	 *
+	 * @param item   Item to add
+	 * @param weight Item's weight, relative to the others
+	 */
+	public void add(T item, double weight)
+	{
+		double w = Double.isNaN(weight) ? MIN_WEIGHT : Math.max(MIN_WEIGHT, weight);
+		// log(u) / w orders the same as u^(1/w), without underflowing for small weights
+		double u = 1.0 - random.nextDouble();
+		queue.add(new Keyed<>(Math.log(u) / w, item));
+	}
+
+	/**
+	 * Draws the next item
+	 *
+	 * @return the item, or null once every item has been drawn
+	 */
+	public T next()
+	{
+		Keyed<T> next = queue.poll();
+		return next == null ? null : next.item;
+	}
+
+	/**
+	 * @return the number of items left to draw
+	 */
+	public int size()
+	{
+		return queue.size();
+	}
+
+	public boolean isEmpty()
+	{
+		return queue.isEmpty();
+	}
+
+	private static class Keyed<T> implements Comparable<Keyed<T>>
+	{
+		private final double key;
+		private final T item;
+
+		private Keyed(double key, T item)
+		{
+			this.key = key;
+			this.item = item;
+		}
+
+		@Override
+		public int compareTo(Keyed<T> o)
+		{
+			// Highest key first
+			return Double.compare(o.key, key);
+		}
+	}
+}
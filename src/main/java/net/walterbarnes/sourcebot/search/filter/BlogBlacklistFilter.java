@@ -16,29 +16,39 @@
  * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-package net.walterbarnes.sourcebot.search;
+package net.walterbarnes.sourcebot.search.filter;
 
 import com.tumblr.jumblr.types.Post;
 
-import java.util.Comparator;
+import java.util.Set;
 
-public class PostComparator
+/**
+ * Rejects posts from blacklisted blogs
+ */
+public class BlogBlacklistFilter implements IPostFilter
 {
-	public static class NoteCount implements Comparator<Post>
+	private final Set<String> blogs;
+
+	public BlogBlacklistFilter(Set<String> blogs)
+	{
+		this.blogs = blogs;
+	}
+
+	@Override
+	public String getName()
+	{
+		return "blog";
+	}
+
+	@Override
+	public int getCost()
 	{
-		@Override
-		public int compare(Post p, Post p1)
-		{
-			return p.getNoteCount().compareTo(p1.getNoteCount());
-		}
+		return 1;
 	}
 
-	public static class Timestamp implements Comparator<Post>
+	@Override
+	public boolean accept(Post post)
 	{
-		@Override
-		public int compare(Post p, Post p1)
-		{
-			return p.getTimestamp().compareTo(p1.getTimestamp());
-		}
+		return !blogs.contains(post.getBlogName());
 	}
 }
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.search.filter;
+
+import com.tumblr.jumblr.types.Post;
+import net.walterbarnes.sourcebot.config.BlogConfig;
+import net.walterbarnes.sourcebot.metrics.Metrics;
+import net.walterbarnes.sourcebot.search.ExclusionMatcher;
+import net.walterbarnes.sourcebot.search.SearchInclusion;
+import net.walterbarnes.sourcebot.trace.RunTrace;
+
+import java.util.*;
+
+/**
+ * Runs posts through a chain of filters, cheapest first, and counts how many posts each stage rejects
+ * <p>
+ * The time spent in each stage is estimated from one post in every {@value #SAMPLE_RATE}, as timing every post costs
+ * more than most of the stages do.
+ * <p>
+ * A pipeline is meant to be built for a single search, and is not thread safe
+ */
+public class FilterPipeline
+{
+	private static final int SAMPLE_RATE = 16;
+
+	private final IPostFilter[] stages;
+	private final long[] rejects;
+	private final long[] nanos;
+	private long accepted = 0;
+	private long checked = 0;
+	private long sampled = 0;
+
+	public FilterPipeline(List<IPostFilter> filters)
+	{
+		List<IPostFilter> sorted = new ArrayList<>(filters);
+		Collections.sort(sorted, new Comparator<IPostFilter>()
+		{
+			@Override
+			public int compare(IPostFilter f, IPostFilter f1)
+			{
+				return Integer.compare(f.getCost(), f1.getCost());
+			}
+		});
+		this.stages = sorted.toArray(new IPostFilter[sorted.size()]);
+		this.rejects = new long[stages.length];
+		this.nanos = new long[stages.length];
+	}
+
+	/**
+	 * Builds the standard pipeline used by every search term
+	 *
+	 * @param blog          Blog being searched for
+	 * @param rule          Inclusion rule being searched
+	 * @param types         Allowed post types
+	 * @param blogBlacklist Blogs to exclude posts from
+	 * @param tagBlacklist  Matcher for the blog's tag exclusions
+	 * @return the pipeline
+	 */
+	public static FilterPipeline forRule(BlogConfig blog, SearchInclusion rule, String[] types, Set<String> blogBlacklist,
+										 ExclusionMatcher tagBlacklist)
+	{
+		List<IPostFilter> filters = new ArrayList<>();
+		filters.add(new PostTypeFilter(types));
+		if (!blogBlacklist.isEmpty()) filters.add(new BlogBlacklistFilter(blogBlacklist));
+		filters.add(new SeenPostFilter(blog));
+		if (rule.getRequiredTags() != null && rule.getRequiredTags().length > 0)
+		{
+			filters.add(new RequiredTagFilter(rule.getRequiredTags()));
+		}
+		ExclusionMatcher matcher = tagBlacklist.without(rule.getRequiredTags());
+		if (!matcher.isEmpty()) filters.add(new ExclusionFilter(matcher));
+		return new FilterPipeline(filters);
+	}
+
+	/**
+	 * @param post Post to check
+	 * @return true if the post passed every stage
+	 */
+	public boolean accept(Post post)
+	{
+		if (checked++ % SAMPLE_RATE == 0) return acceptTimed(post);
+		for (int i = 0; i < stages.length; i++)
+		{
+			if (!stages[i].accept(post))
+			{
+				rejects[i]++;
+				return false;
+			}
+		}
+		accepted++;
+		return true;
+	}
+
+	private boolean acceptTimed(Post post)
+	{
+		sampled++;
+		long time = System.nanoTime();
+		for (int i = 0; i < stages.length; i++)
+		{
+			boolean accept = stages[i].accept(post);
+			long now = System.nanoTime();
+			nanos[i] += now - time;
+			time = now;
+			if (!accept)
+			{
+				rejects[i]++;
+				return false;
+			}
+		}
+		accepted++;
+		return true;
+	}
+
+	/**
+	 * Adds the time spent in each stage and the posts each stage rejected to the metrics, and to the run trace if
+	 * there is one, should be called once the search is done
+	 *
+	 * @param span Span of the search, or null
+	 */
+	public void record(RunTrace.Span span)
+	{
+		double scale = sampled == 0 ? 0 : (double) checked / sampled;
+		for (int i = 0; i < stages.length; i++)
+		{
+			long time = (long) (nanos[i] * scale);
+			Metrics.FILTER_STAGES.labels(stages[i].getName()).observeNanos(time);
+			Metrics.FILTER_REJECTS.labels(stages[i].getName()).inc(rejects[i]);
+			if (span != null) span.add("filter " + stages[i].getName(), time).set("rejected", rejects[i]);
+		}
+	}
+
+	public long getAccepted()
+	{
+		return accepted;
+	}
+
+	/**
+	 * @return the number of posts rejected by each stage, in the order the stages run
+	 */
+	public Map<String, Long> getRejects()
+	{
+		Map<String, Long> out = new LinkedHashMap<>();
+		for (int i = 0; i < stages.length; i++) out.put(stages[i].getName(), rejects[i]);
+		return out;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < stages.length; i++)
+		{
+			if (i > 0) sb.append(", ");
+			sb.append(stages[i].getName()).append('=').append(rejects[i]);
+		}
+		return sb.toString();
+	}
+}
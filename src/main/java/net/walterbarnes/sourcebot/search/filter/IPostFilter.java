@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.search.filter;
+
+import com.tumblr.jumblr.types.Post;
+
+/**
+ * A single stage of a {@link FilterPipeline}
+ */
+public interface IPostFilter
+{
+	/**
+	 * @return a short name for the stage, used when reporting rejects
+	 */
+	String getName();
+
+	/**
+	 * Rough relative cost of running the stage on one post, the pipeline runs cheaper stages first
+	 *
+	 * @return the cost
+	 */
+	int getCost();
+
+	/**
+	 * @param post Post to check
+	 * @return true if the post passes this stage
+	 */
+	boolean accept(Post post);
+}
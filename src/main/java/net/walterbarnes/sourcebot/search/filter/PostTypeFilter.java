@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.search.filter;
+
+import com.tumblr.jumblr.types.Post;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Rejects posts whose type isn't in the allowed list
+ */
+public class PostTypeFilter implements IPostFilter
+{
+	private final Set<String> types;
+
+	public PostTypeFilter(String[] types)
+	{
+		this.types = types == null ? new HashSet<String>() : new HashSet<>(Arrays.asList(types));
+	}
+
+	@Override
+	public String getName()
+	{
+		return "type";
+	}
+
+	@Override
+	public int getCost()
+	{
+		return 1;
+	}
+
+	@Override
+	public boolean accept(Post post)
+	{
+		return types.contains(post.getType().getValue());
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.search.spam;
+
+import com.tumblr.jumblr.types.Post;
+import net.walterbarnes.sourcebot.tumblr.SourceBlog;
+
+import java.util.Collection;
+
+/**
+ * A single rule of a {@link SpamFilter}
+ */
+public interface ISpamRule
+{
+	/**
+	 * @return a short name for the rule, used when logging verdicts
+	 */
+	String getName();
+
+	/**
+	 * Rough relative cost of checking one post, the filter checks cheaper rules first
+	 *
+	 * @return the cost
+	 */
+	int getCost();
+
+	/**
+	 * @return true if the rule needs the post's source blog looked up, such rules only run once every local rule has
+	 * passed
+	 */
+	boolean needsSourceBlog();
+
+	/**
+	 * Called with all candidate posts before any are checked, for rules that compare posts against each other
+	 *
+	 * @param candidates Posts that may be checked
+	 */
+	void prepare(Collection<Post> candidates);
+
+	/**
+	 * @param post   Post to check
+	 * @param source The post's source blog, null unless {@link #needsSourceBlog()} is true
+	 * @return true if the post looks like spam
+	 */
+	boolean isSpam(Post post, SourceBlog source);
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.search.spam;
+
+import com.tumblr.jumblr.types.Post;
+import net.walterbarnes.sourcebot.tumblr.SourceBlog;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Flags posts linking to any of a set of domains, or their subdomains
+ */
+public class LinkDomainRule implements ISpamRule
+{
+	private static final Pattern HOST = Pattern.compile("(?i)\\bhttps?://([a-z0-9.-]+)");
+
+	private final Set<String> domains = new HashSet<>();
+
+	public LinkDomainRule(Collection<String> domains)
+	{
+		for (String domain : domains)
+		{
+			this.domains.add(domain.toLowerCase(Locale.ROOT));
+		}
+	}
+
+	@Override
+	public String getName()
+	{
+		return "domain";
+	}
+
+	@Override
+	public int getCost()
+	{
+		return 5;
+	}
+
+	@Override
+	public boolean needsSourceBlog()
+	{
+		return false;
+	}
+
+	@Override
+	public void prepare(Collection<Post> candidates) {}
+
+	@Override
+	public boolean isSpam(Post post, SourceBlog source)
+	{
+		return hasDomain(PostText.getLink(post)) || hasDomain(PostText.getCaption(post));
+	}
+
+	private boolean hasDomain(String text)
+	{
+		if (text == null) return false;
+		Matcher m = HOST.matcher(text);
+		while (m.find())
+		{
+			// Check the host and every parent domain of it
+			String host = m.group(1).toLowerCase(Locale.ROOT);
+			while (true)
+			{
+				if (domains.contains(host)) return true;
+				int dot = host.indexOf('.');
+				if (dot < 0) break;
+				host = host.substring(dot + 1);
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.search.spam;
+
+import com.tumblr.jumblr.types.Post;
+import net.walterbarnes.sourcebot.tumblr.SourceBlog;
+
+import java.util.Collection;
+
+/**
+ * Flags posts from blogs that no longer exist, whether deleted or suspended, reblogs of these would fail anyway
+ */
+public class MissingBlogRule implements ISpamRule
+{
+	@Override
+	public String getName()
+	{
+		return "missing";
+	}
+
+	@Override
+	public int getCost()
+	{
+		return 0;
+	}
+
+	@Override
+	public boolean needsSourceBlog()
+	{
+		return true;
+	}
+
+	@Override
+	public void prepare(Collection<Post> candidates) {}
+
+	@Override
+	public boolean isSpam(Post post, SourceBlog source)
+	{
+		return !source.isFound();
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.search.spam;
+
+import com.tumblr.jumblr.types.*;
+
+/**
+ * Pulls the text the spam rules look at out of the different types of post
+ */
+class PostText
+{
+	private PostText() {}
+
+	/**
+	 * @param post Post to get the caption of
+	 * @return the post's caption or main text, or null if it has none
+	 */
+	static String getCaption(Post post)
+	{
+		if (post instanceof PhotoPost) return ((PhotoPost) post).getCaption();
+		if (post instanceof VideoPost) return ((VideoPost) post).getCaption();
+		if (post instanceof AudioPost) return ((AudioPost) post).getCaption();
+		if (post instanceof TextPost) return ((TextPost) post).getBody();
+		if (post instanceof LinkPost) return ((LinkPost) post).getDescription();
+		if (post instanceof QuotePost) return ((QuotePost) post).getText();
+		if (post instanceof AnswerPost) return ((AnswerPost) post).getAnswer();
+		return null;
+	}
+
+	/**
+	 * @param post Post to get the link of
+	 * @return the url a link post points to, or null for other posts
+	 */
+	static String getLink(Post post)
+	{
+		return post instanceof LinkPost ? ((LinkPost) post).getLinkUrl() : null;
+	}
+}
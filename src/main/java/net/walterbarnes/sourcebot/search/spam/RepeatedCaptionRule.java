@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.search.spam;
+
+import com.tumblr.jumblr.types.Post;
+import net.walterbarnes.sourcebot.tumblr.SourceBlog;
+
+import java.util.*;
+
+/**
+ * Flags posts whose caption was also posted by a number of other blogs among the candidates, the sign of a spam ring
+ * posting the same thing from many blogs
+ */
+public class RepeatedCaptionRule implements ISpamRule
+{
+	/**
+	 * Captions shorter than this are too likely to repeat by chance
+	 */
+	private static final int MIN_LENGTH = 20;
+
+	private final int maxBlogs;
+	private final Map<String, Set<String>> blogsByCaption = new HashMap<>();
+
+	/**
+	 * @param maxBlogs Most blogs a caption can appear on before it's flagged
+	 */
+	public RepeatedCaptionRule(int maxBlogs)
+	{
+		this.maxBlogs = maxBlogs;
+	}
+
+	private static String normalize(String caption)
+	{
+		if (caption == null) return null;
+		String text = caption.replaceAll("<[^>]*>", " ").replaceAll("\\s+", " ").trim().toLowerCase(Locale.ROOT);
+		return text.length() < MIN_LENGTH ? null : text;
+	}
+
+	@Override
+	public String getName()
+	{
+		return "caption";
+	}
+
+	@Override
+	public int getCost()
+	{
+		return 3;
+	}
+
+	@Override
+	public boolean needsSourceBlog()
+	{
+		return false;
+	}
+
+	@Override
+	public synchronized void prepare(Collection<Post> candidates)
+	{
+		blogsByCaption.clear();
+		for (Post post : candidates)
+		{
+			String caption = normalize(PostText.getCaption(post));
+			if (caption == null) continue;
+			Set<String> blogs = blogsByCaption.get(caption);
+			if (blogs == null) blogsByCaption.put(caption, blogs = new HashSet<>());
+			blogs.add(post.getBlogName());
+		}
+	}
+
+	@Override
+	public synchronized boolean isSpam(Post post, SourceBlog source)
+	{
+		String caption = normalize(PostText.getCaption(post));
+		if (caption == null) return false;
+		Set<String> blogs = blogsByCaption.get(caption);
+		return blogs != null && blogs.size() > maxBlogs;
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.search.spam;
+
+import com.tumblr.jumblr.types.Post;
+import net.walterbarnes.sourcebot.tumblr.SourceBlog;
+import net.walterbarnes.sourcebot.tumblr.SourceBlogCache;
+
+import java.util.*;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A blog's compiled spam rules
+ * <p>
+ * Rules that only look at the post itself run first, cheapest first, and the post's source blog is only looked up
+ * once they've all passed, so posts caught locally never cost an API call. Checking stops at the first rule that flags
+ * the post.
+ */
+public class SpamFilter
+{
+	private static final Logger logger = Logger.getLogger(SpamFilter.class.getName());
+	private static final Comparator<ISpamRule> BY_COST = new Comparator<ISpamRule>()
+	{
+		@Override
+		public int compare(ISpamRule a, ISpamRule b)
+		{
+			return Integer.compare(a.getCost(), b.getCost());
+		}
+	};
+
+	private final List<ISpamRule> localRules = new ArrayList<>();
+	private final List<ISpamRule> blogRules = new ArrayList<>();
+
+	public SpamFilter(Collection<ISpamRule> rules)
+	{
+		for (ISpamRule rule : rules)
+		{
+			(rule.needsSourceBlog() ? blogRules : localRules).add(rule);
+		}
+		// Any rule looking at the source blog needs it to exist, so check that first
+		if (!blogRules.isEmpty()) blogRules.add(new MissingBlogRule());
+		Collections.sort(localRules, BY_COST);
+		Collections.sort(blogRules, BY_COST);
+	}
+
+	/**
+	 * @return the rules used for blogs without any rules of their own, fewer than 5 posts or the default title
+	 */
+	public static SpamFilter defaults()
+	{
+		return new SpamFilter(Arrays.<ISpamRule>asList(new MinPostCountRule(5),
+				new TitlePatternRule(Pattern.quote("Без названия"))));
+	}
+
+	/**
+	 * Compiles rules as stored in the spam_rules table
+	 *
+	 * @param rules Rule values, keyed by rule type
+	 * @return the filter
+	 */
+	public static SpamFilter compile(Map<String, List<String>> rules)
+	{
+		List<ISpamRule> out = new ArrayList<>();
+		for (Map.Entry<String, List<String>> e : rules.entrySet())
+		{
+			String type = e.getKey();
+			try
+			{
+				switch (type)
+				{
+					case "post_count":
+						for (String value : e.getValue()) out.add(new MinPostCountRule(Integer.parseInt(value.trim())));
+						break;
+					case "title":
+						for (String value : e.getValue()) out.add(new TitlePatternRule(value));
+						break;
+					case "tags":
+						for (String value : e.getValue()) out.add(new TagStuffingRule(Integer.parseInt(value.trim())));
+						break;
+					case "caption":
+						for (String value : e.getValue()) out.add(new RepeatedCaptionRule(Integer.parseInt(value.trim())));
+						break;
+					case "domain":
+						out.add(new LinkDomainRule(e.getValue()));
+						break;
+					default:
+						logger.warning("Unknown spam rule type '" + type + "'");
+				}
+			}
+			catch (NumberFormatException | PatternSyntaxException ex)
+			{
+				logger.warning(String.format("Ignoring invalid %s spam rule: %s", type, ex.getMessage()));
+			}
+		}
+		return new SpamFilter(out);
+	}
+
+	/**
+	 * Passes the candidates of a run to rules that compare posts against each other, must be called before checking
+	 * any of them
+	 *
+	 * @param candidates Posts that may be checked
+	 */
+	public void prepare(Collection<Post> candidates)
+	{
+		for (ISpamRule rule : localRules) rule.prepare(candidates);
+		for (ISpamRule rule : blogRules) rule.prepare(candidates);
+	}
+
+	/**
+	 * Checks a post against the rules
+	 *
+	 * @param post  Post to check
+	 * @param blogs Cache to look up the post's source blog with
+	 * @return the name of the rule that flagged the post, or null if it passed
+	 */
+	public String check(Post post, SourceBlogCache blogs)
+	{
+		for (ISpamRule rule : localRules)
+		{
+			if (rule.isSpam(post, null)) return rule.getName();
+		}
+		if (blogRules.isEmpty()) return null;
+
+		SourceBlog source = blogs.get(post.getBlogName());
+		for (ISpamRule rule : blogRules)
+		{
+			if (rule.isSpam(post, source)) return rule.getName();
+		}
+		return null;
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.sim;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts latencies into buckets that grow by about 10% each, so percentiles can be read back to within 10% without
+ * keeping every sample
+ * <p>
+ * Thread safe, recording never locks
+ */
+public class LatencyHistogram
+{
+	private static final double GROWTH = Math.log(1.1);
+	private static final int BUCKETS = (int) (Math.log(10 * 60 * 1000 + 1) / GROWTH) + 2;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	private static int bucket(long millis)
+	{
+		return Math.min(BUCKETS - 1, (int) (Math.log(Math.max(0, millis) + 1) / GROWTH));
+	}
+
+	/**
+	 * @param bucket Bucket index
+	 * @return the highest latency counted into the bucket, in milliseconds
+	 */
+	private static long upperBound(int bucket)
+	{
+		return (long) Math.ceil(Math.exp((bucket + 1) * GROWTH) - 1);
+	}
+
+	/**
+	 * @param millis Latency to record, in milliseconds
+	 */
+	public void record(long millis)
+	{
+		counts.incrementAndGet(bucket(millis));
+	}
+
+	public long getCount()
+	{
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) total += counts.get(i);
+		return total;
+	}
+
+	/**
+	 * @param p Percentile to get, between 0 and 100
+	 * @return the latency at or below which {@code p} percent of recorded latencies fall, in milliseconds, or 0 if
+	 * nothing has been recorded
+	 */
+	public long getPercentile(double p)
+	{
+		long[] snapshot = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) return 0;
+
+		long rank = (long) Math.ceil(total * p / 100);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			seen += snapshot[i];
+			if (seen >= rank && snapshot[i] > 0) return upperBound(i);
+		}
+		return upperBound(BUCKETS - 1);
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("p50 %d ms, p90 %d ms, p99 %d ms, p99.9 %d ms", getPercentile(50), getPercentile(90),
+				getPercentile(99), getPercentile(99.9));
+	}
+}
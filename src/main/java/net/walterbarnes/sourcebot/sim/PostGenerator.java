@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.sim;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.tumblr.jumblr.types.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds synthetic posts that look enough like tag search results to drive the filters and selection code offline
+ * <p>
+ * Blogs and tags are drawn from fixed vocabularies with a skew towards the first entries, note counts are heavy
+ * tailed, and timestamps walk backwards from a fixed time like a tag's pages do. The same seed always gives the same
+ * posts, and a post's content depends only on the seed and its id, so a post built twice comes out the same both times.
+ * Only {@link #json(long, long)} and {@link #toPost(JsonObject)} are thread safe.
+ */
+public class PostGenerator
+{
+	/**
+	 * Time the newest generated post was made, in seconds
+	 */
+	public static final long START_TIME = 1460000000L;
+
+	private static final String[] WORDS = {"art", "photo", "cute", "cat", "dog", "nature", "sky", "sunset", "city",
+			"travel", "food", "coffee", "book", "music", "film", "vintage", "aesthetic", "black", "white", "night",
+			"rain", "ocean", "flower", "forest", "mountain", "winter", "summer", "love", "quote", "life", "fashion",
+			"style", "design", "drawing", "sketch", "paint", "digital", "anime", "game", "space"};
+
+	private final long seed;
+	private final Random random;
+	private final Gson gson = new Gson();
+	private final String[] blogs;
+	private final String[] tags;
+	private long nextId;
+	private long time = START_TIME;
+
+	public PostGenerator(long seed)
+	{
+		this(seed, 5000, 2000);
+	}
+
+	/**
+	 * @param seed  Seed for the generator
+	 * @param blogs Number of distinct blogs posts are drawn from
+	 * @param tags  Number of distinct tags posts are drawn from
+	 */
+	public PostGenerator(long seed, int blogs, int tags)
+	{
+		this.seed = seed;
+		this.random = new Random(seed);
+		this.nextId = 140000000000L + random.nextInt(1000000);
+		this.blogs = new String[blogs];
+		for (int i = 0; i < blogs; i++) this.blogs[i] = "blog-" + i;
+		this.tags = new String[tags];
+		for (int i = 0; i < tags; i++)
+		{
+			int w = WORDS.length;
+			this.tags[i] = i < w ? WORDS[i] : WORDS[i % w] + " " + WORDS[(i / w) % w] + (i / (w * w));
+		}
+	}
+
+	/**
+	 * @param n Number of posts
+	 * @return n posts, newest first
+	 */
+	public List<Post> posts(int n)
+	{
+		List<Post> out = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) out.add(post());
+		return out;
+	}
+
+	/**
+	 * @return the next post, older than the previous one
+	 */
+	public Post post()
+	{
+		long id = nextId;
+		nextId += 1 + random.nextInt(1000);
+		time -= random.nextInt(60);
+		return toPost(json(id, time));
+	}
+
+	/**
+	 * Builds a post as the API would return it, with random content drawn from the generator's seed and the post's id
+	 *
+	 * @param id        Id of the post
+	 * @param timestamp Time the post was made, in seconds
+	 * @return the post's JSON
+	 */
+	public JsonObject json(long id, long timestamp)
+	{
+		Random random = new Random(mix(seed ^ mix(id)));
+		JsonObject json = new JsonObject();
+		json.addProperty("id", id);
+		json.addProperty("timestamp", timestamp);
+		json.addProperty("blog_name", blogs[skewed(random, blogs.length)]);
+		json.addProperty("note_count", noteCount(random));
+		json.addProperty("reblog_key", Long.toString(random.nextLong() & Long.MAX_VALUE, 36));
+
+		JsonArray postTags = new JsonArray();
+		int count = random.nextInt(random.nextInt(10) == 0 ? 30 : 8);
+		for (int i = 0; i < count; i++) postTags.add(new JsonPrimitive(tags[skewed(random, tags.length)]));
+		json.add("tags", postTags);
+
+		int type = random.nextInt(100);
+		if (type < 60)
+		{
+			json.addProperty("type", "photo");
+			json.addProperty("caption", text(random, random.nextInt(20)));
+		}
+		else if (type < 85)
+		{
+			json.addProperty("type", "text");
+			json.addProperty("title", text(random, random.nextInt(6)));
+			json.addProperty("body", text(random, 10 + random.nextInt(80)));
+		}
+		else if (type < 95)
+		{
+			json.addProperty("type", "quote");
+			json.addProperty("text", text(random, 5 + random.nextInt(30)));
+			json.addProperty("source", text(random, random.nextInt(4)));
+		}
+		else
+		{
+			json.addProperty("type", "link");
+			json.addProperty("title", text(random, random.nextInt(8)));
+			json.addProperty("url", "http://" + blogs[random.nextInt(blogs.length)] + ".example.com/" + random.nextInt(100000));
+			json.addProperty("description", text(random, random.nextInt(30)));
+		}
+		return json;
+	}
+
+	/**
+	 * Converts a post's JSON to the jumblr type for its post type
+	 *
+	 * @param json Post's JSON, as built by {@link #json(long, long)}
+	 * @return the post
+	 */
+	public Post toPost(JsonObject json)
+	{
+		switch (json.get("type").getAsString())
+		{
+			case "photo":
+				return gson.fromJson(json, PhotoPost.class);
+			case "text":
+				return gson.fromJson(json, TextPost.class);
+			case "quote":
+				return gson.fromJson(json, QuotePost.class);
+			case "link":
+				return gson.fromJson(json, LinkPost.class);
+			default:
+				return gson.fromJson(json, Post.class);
+		}
+	}
+
+	/**
+	 * Picks blacklist terms, mostly tags from the vocabulary with some longer phrases that rarely match
+	 *
+	 * @param n Number of terms
+	 * @return the terms
+	 */
+	public List<String> terms(int n)
+	{
+		List<String> out = new ArrayList<>(n);
+		for (int i = 0; i < n; i++)
+		{
+			if (random.nextInt(4) == 0)
+			{
+				out.add(text(random, 2 + random.nextInt(3)));
+			}
+			else
+			{
+				out.add(tags[random.nextInt(tags.length)]);
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Picks post ids in the range this generator hands out, so a share of them collide with generated posts
+	 *
+	 * @param n Number of ids
+	 * @return the ids
+	 */
+	public long[] ids(int n)
+	{
+		long[] out = new long[n];
+		long id = nextId;
+		for (int i = 0; i < n; i++)
+		{
+			id += 1 + random.nextInt(1000);
+			out[i] = id;
+		}
+		return out;
+	}
+
+	/**
+	 * @param n Number of blogs
+	 * @return names of blogs posts are drawn from
+	 */
+	public List<String> blogs(int n)
+	{
+		List<String> out = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) out.add(blogs[random.nextInt(blogs.length)]);
+		return out;
+	}
+
+	/**
+	 * Scrambles a value, so seeds built from neighbouring ids don't give similar sequences
+	 */
+	private static long mix(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Picks an index in [0, n), with lower indexes much more likely
+	 */
+	private static int skewed(Random random, int n)
+	{
+		double r = random.nextDouble();
+		return (int) (n * r * r * r);
+	}
+
+	/**
+	 * Most posts have a handful of notes, a few have many thousands
+	 */
+	private static long noteCount(Random random)
+	{
+		return Math.min(1000000, (long) Math.pow(1 - random.nextDouble(), -1.6) - 1);
+	}
+
+	private static String text(Random random, int words)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < words; i++)
+		{
+			if (i > 0) sb.append(' ');
+			sb.append(WORDS[random.nextInt(WORDS.length)]);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,570 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.sim;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.tumblr.jumblr.exceptions.JumblrException;
+import org.scribe.model.Response;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process stand-in for the parts of the Tumblr API the bot uses, answering with the same JSON the real API
+ * would
+ * <p>
+ * Every call is delayed by a log-normal latency, and can fail with a 503 at a set rate, or a 429 once calls come in
+ * faster than the set throttle rate. Tag searches return synthetic pages which are the same each time the same page
+ * is asked for, and each blog gets a set of synthetic posts plus a queue that publishes one post per publish
+ * interval. Reblogs are kept in memory, so the bot sees its own queue fill up and drain.
+ */
+public class SimulatedApi
+{
+	private static final int PAGE_SIZE = 20;
+	private static final int MAX_PUBLISHED = 1000;
+	private static final int MAX_REBLOGS = 100000;
+	// Share of blogs that don't exist, in percent
+	private static final int MISSING_BLOGS = 2;
+
+	private final long seed;
+	private final long latency;
+	private final double latencySigma;
+	private final double errorRate;
+	private final int throttleRate;
+	private final int blogPosts;
+	private final double tagSpacing;
+	private final long publishInterval;
+	private final Random random;
+	private final PostGenerator generator;
+	private final SimulationStats stats = new SimulationStats();
+	private final ConcurrentMap<String, SimulatedBlog> blogs = new ConcurrentHashMap<>();
+	private final Map<Long, JsonObject> reblogs;
+	private final AtomicLong nextId = new AtomicLong(9000000000000L);
+	private double tokens;
+	private long lastRefill = System.nanoTime();
+
+	/**
+	 * @param seed            Seed for the generated posts
+	 * @param latency         Median latency of a call, in milliseconds
+	 * @param latencySigma    Spread of the latency, as the standard deviation of its log
+	 * @param errorRate       Share of calls that fail with a 503, between 0 and 1
+	 * @param throttleRate    Calls per second allowed before answering with a 429, or 0 for no limit
+	 * @param blogPosts       Number of synthetic posts on each blog
+	 * @param tagRate         Number of posts made in each tag per hour
+	 * @param publishInterval Time between posts being published from each blog's queue, in milliseconds
+	 */
+	public SimulatedApi(long seed, long latency, double latencySigma, double errorRate, int throttleRate, int blogPosts,
+						int tagRate, long publishInterval)
+	{
+		this.seed = seed;
+		this.latency = latency;
+		this.latencySigma = latencySigma;
+		this.errorRate = errorRate;
+		this.throttleRate = throttleRate;
+		this.blogPosts = blogPosts;
+		this.tagSpacing = 3600.0 / Math.max(1, tagRate);
+		this.publishInterval = publishInterval;
+		this.random = new Random(seed);
+		this.generator = new PostGenerator(seed);
+		this.tokens = throttleRate;
+		this.reblogs = Collections.synchronizedMap(new LinkedHashMap<Long, JsonObject>()
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, JsonObject> eldest)
+			{
+				return size() > MAX_REBLOGS;
+			}
+		});
+	}
+
+	/**
+	 * Builds the exception jumblr throws for an error response
+	 * <p>
+	 * jumblr only builds these from a scribe response, which can only be made from a connection, so this hands one a
+	 * connection that plays back the status and an error body
+	 *
+	 * @param status  HTTP status of the response
+	 * @param message Status message
+	 * @return the exception
+	 */
+	public static JumblrException error(final int status, final String message)
+	{
+		final byte[] body = String.format("{\"meta\":{\"status\":%d,\"msg\":\"%s\"},\"response\":[]}", status, message)
+				.getBytes(StandardCharsets.UTF_8);
+		try
+		{
+			HttpURLConnection conn = new HttpURLConnection(new URL("http://localhost/"))
+			{
+				@Override
+				public int getResponseCode()
+				{
+					return status;
+				}
+
+				@Override
+				public String getResponseMessage()
+				{
+					return message;
+				}
+
+				@Override
+				public InputStream getInputStream()
+				{
+					return new ByteArrayInputStream(body);
+				}
+
+				@Override
+				public InputStream getErrorStream()
+				{
+					return new ByteArrayInputStream(body);
+				}
+
+				@Override
+				public Map<String, List<String>> getHeaderFields()
+				{
+					return Collections.emptyMap();
+				}
+
+				@Override
+				public void connect()
+				{
+				}
+
+				@Override
+				public void disconnect()
+				{
+				}
+
+				@Override
+				public boolean usingProxy()
+				{
+					return false;
+				}
+			};
+			Constructor<Response> constructor = Response.class.getDeclaredConstructor(HttpURLConnection.class);
+			constructor.setAccessible(true);
+			return new JumblrException(constructor.newInstance(conn));
+		}
+		catch (ReflectiveOperationException | IOException e)
+		{
+			throw new IllegalStateException("Unable to build simulated API error", e);
+		}
+	}
+
+	private static long getLong(Map<String, ?> params, String key, long def)
+	{
+		Object value = params.get(key);
+		if (value == null) return def;
+		try
+		{
+			return Long.parseLong(value.toString());
+		}
+		catch (NumberFormatException e)
+		{
+			return def;
+		}
+	}
+
+	private static String getString(Map<String, ?> params, String key)
+	{
+		Object value = params.get(key);
+		return value == null ? null : value.toString();
+	}
+
+	/**
+	 * Strips the domain jumblr adds to blog names that don't have one
+	 */
+	private static String blogName(String host)
+	{
+		return host.endsWith(".tumblr.com") ? host.substring(0, host.length() - ".tumblr.com".length()) : host;
+	}
+
+	/**
+	 * @param path Path of a call
+	 * @return the path, with the blog name replaced so calls to the same endpoint are counted together
+	 */
+	private static String endpoint(String path)
+	{
+		if (!path.startsWith("/blog/")) return path;
+		int slash = path.indexOf('/', 6);
+		return "/blog/{name}" + (slash < 0 ? "" : path.substring(slash));
+	}
+
+	private static JsonObject posts(Collection<JsonObject> posts, long total)
+	{
+		JsonArray array = new JsonArray();
+		for (JsonObject post : posts) array.add(post);
+		JsonObject out = new JsonObject();
+		out.add("posts", array);
+		out.addProperty("total_posts", total);
+		return out;
+	}
+
+	private static <T> List<T> page(List<T> list, long offset, long limit)
+	{
+		int from = (int) Math.min(list.size(), Math.max(0, offset));
+		int to = (int) Math.min(list.size(), from + limit);
+		return new ArrayList<>(list.subList(from, to));
+	}
+
+	public SimulationStats getStats()
+	{
+		return stats;
+	}
+
+	/**
+	 * Makes a call to the simulated API
+	 *
+	 * @param method HTTP method, GET or POST
+	 * @param path   Path of the call, as jumblr builds it
+	 * @param params Parameters of the call, may be null
+	 * @return the response element of the API's reply
+	 * @throws JumblrException if the call fails
+	 */
+	public JsonElement call(String method, String path, Map<String, ?> params)
+	{
+		long start = System.currentTimeMillis();
+		int status = 200;
+		try
+		{
+			if (!takeToken())
+			{
+				status = 429;
+				throw error(status, "Limit Exceeded");
+			}
+			sleep();
+			if (errorRate > 0 && random.nextDouble() < errorRate)
+			{
+				status = 503;
+				throw error(status, "Service Unavailable");
+			}
+			JsonElement response = route(method, path, params == null ? Collections.<String, Object>emptyMap() : params);
+			if (response == null)
+			{
+				status = 404;
+				throw error(status, "Not Found");
+			}
+			return response;
+		}
+		finally
+		{
+			stats.record(method + " " + endpoint(path), status, System.currentTimeMillis() - start);
+		}
+	}
+
+	private JsonElement route(String method, String path, Map<String, ?> params)
+	{
+		if (method.equals("GET") && path.equals("/user/info")) return user();
+		if (method.equals("GET") && path.equals("/tagged"))
+		{
+			String tag = getString(params, "tag");
+			if (tag == null) return null;
+			return tagged(tag, getLong(params, "before", System.currentTimeMillis() / 1000),
+					getLong(params, "limit", PAGE_SIZE));
+		}
+		if (!path.startsWith("/blog/")) return null;
+
+		int slash = path.indexOf('/', 6);
+		if (slash < 0) return null;
+		String name = blogName(path.substring(6, slash));
+		String rest = path.substring(slash);
+		long offset = getLong(params, "offset", 0);
+		long limit = getLong(params, "limit", PAGE_SIZE);
+
+		if (method.equals("POST"))
+		{
+			switch (rest)
+			{
+				case "/post/reblog":
+					return reblog(name, params);
+				case "/post/delete":
+					getBlog(name).delete(getLong(params, "id", 0));
+					return new JsonObject();
+				default:
+					return null;
+			}
+		}
+
+		if (rest.equals("/info")) return blogInfo(name);
+		if (isMissing(name)) return null;
+		switch (rest)
+		{
+			case "/posts/queue":
+				return getBlog(name).getQueued(offset, limit);
+			case "/posts/draft":
+				return getBlog(name).getDrafts(offset, limit);
+			case "/posts/submission":
+				return posts(Collections.<JsonObject>emptyList(), 0);
+			default:
+				if (!rest.startsWith("/posts")) return null;
+				if (params.containsKey("id"))
+				{
+					JsonObject post = reblogs.get(getLong(params, "id", 0));
+					return posts(post == null ? Collections.<JsonObject>emptyList() : Collections.singletonList(post),
+							post == null ? 0 : 1);
+				}
+				return getBlog(name).getPosts(offset, limit);
+		}
+	}
+
+	private JsonObject user()
+	{
+		JsonObject user = new JsonObject();
+		user.addProperty("name", "simulated");
+		user.addProperty("likes", 0);
+		user.addProperty("following", 0);
+		user.addProperty("default_post_format", "html");
+		user.add("blogs", new JsonArray());
+		JsonObject out = new JsonObject();
+		out.add("user", user);
+		return out;
+	}
+
+	/**
+	 * Builds a page of a tag's posts, made before the given time
+	 */
+	private JsonArray tagged(String tag, long before, long limit)
+	{
+		Random r = new Random(seed * 31 + tag.hashCode() * 1000003L + before);
+		JsonArray out = new JsonArray();
+		long time = before;
+		for (int i = 0; i < Math.min(limit, PAGE_SIZE); i++)
+		{
+			time -= 1 + (long) (-Math.log(1 - r.nextDouble()) * tagSpacing);
+			long id = time * 1000 + r.nextInt(1000);
+			JsonObject post = generator.json(id, time);
+			JsonArray tags = post.getAsJsonArray("tags");
+			boolean tagged = false;
+			for (JsonElement t : tags) tagged |= t.getAsString().equals(tag);
+			if (!tagged) tags.add(new JsonPrimitive(tag));
+			out.add(post);
+		}
+		return out;
+	}
+
+	private JsonObject blogInfo(String name)
+	{
+		if (isMissing(name)) return null;
+		Random r = new Random(seed * 31 + name.hashCode());
+		JsonObject blog = new JsonObject();
+		blog.addProperty("name", name);
+		blog.addProperty("title", "Simulated " + name);
+		blog.addProperty("description", "");
+		blog.addProperty("url", "http://" + name + ".tumblr.com/");
+		blog.addProperty("posts", r.nextInt(r.nextBoolean() ? 100 : 10000));
+		blog.addProperty("updated", System.currentTimeMillis() / 1000 - r.nextInt(30 * 24 * 60 * 60));
+		JsonObject out = new JsonObject();
+		out.add("blog", blog);
+		return out;
+	}
+
+	private JsonObject reblog(String name, Map<String, ?> params)
+	{
+		if (isMissing(name) || !params.containsKey("id") || !params.containsKey("reblog_key")) return null;
+
+		long id = nextId.incrementAndGet();
+		JsonObject post = generator.json(id, System.currentTimeMillis() / 1000);
+		post.addProperty("blog_name", name);
+		post.addProperty("reblogged_from_id", getLong(params, "id", 0));
+		String tags = getString(params, "tags");
+		if (tags != null)
+		{
+			JsonArray array = new JsonArray();
+			for (String tag : tags.split(","))
+			{
+				if (!tag.trim().isEmpty()) array.add(new JsonPrimitive(tag.trim()));
+			}
+			post.add("tags", array);
+		}
+		String state = getString(params, "state");
+		post.addProperty("state", state == null ? "published" : state);
+		getBlog(name).add(post);
+		reblogs.put(id, post);
+		stats.reblogged();
+
+		JsonObject out = new JsonObject();
+		out.addProperty("id", id);
+		return out;
+	}
+
+	private boolean isMissing(String name)
+	{
+		return Math.abs((name.hashCode() * 31 + seed) % 100) < MISSING_BLOGS;
+	}
+
+	private SimulatedBlog getBlog(String name)
+	{
+		SimulatedBlog blog = blogs.get(name);
+		if (blog == null)
+		{
+			SimulatedBlog created = new SimulatedBlog(name);
+			blog = blogs.putIfAbsent(name, created);
+			if (blog == null) blog = created;
+		}
+		return blog;
+	}
+
+	private void sleep()
+	{
+		if (latency <= 0) return;
+		double gaussian;
+		synchronized (random)
+		{
+			gaussian = random.nextGaussian();
+		}
+		try
+		{
+			Thread.sleep((long) (latency * Math.exp(latencySigma * gaussian)));
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted during simulated API call", e);
+		}
+	}
+
+	private synchronized boolean takeToken()
+	{
+		if (throttleRate <= 0) return true;
+		long now = System.nanoTime();
+		tokens = Math.min(throttleRate, tokens + (now - lastRefill) / 1e9 * throttleRate);
+		lastRefill = now;
+		if (tokens < 1) return false;
+		tokens--;
+		return true;
+	}
+
+	/**
+	 * A blog's queue, drafts and published reblogs
+	 */
+	private class SimulatedBlog
+	{
+		private final String name;
+		private final long idBase;
+		private final LinkedList<JsonObject> queue = new LinkedList<>();
+		private final LinkedList<JsonObject> drafts = new LinkedList<>();
+		// Newest first
+		private final LinkedList<JsonObject> published = new LinkedList<>();
+		private long lastPublish = System.currentTimeMillis();
+
+		private SimulatedBlog(String name)
+		{
+			this.name = name;
+			this.idBase = 5000000000000L + (name.hashCode() & 0xffffffL) * 100000;
+		}
+
+		private synchronized void add(JsonObject post)
+		{
+			publishDue();
+			switch (post.get("state").getAsString())
+			{
+				case "queue":
+					queue.addLast(post);
+					break;
+				case "draft":
+					drafts.addLast(post);
+					break;
+				default:
+					publish(post);
+			}
+		}
+
+		private synchronized void delete(long id)
+		{
+			for (List<JsonObject> list : Arrays.asList(queue, drafts, published))
+			{
+				Iterator<JsonObject> it = list.iterator();
+				while (it.hasNext())
+				{
+					if (it.next().get("id").getAsLong() == id) it.remove();
+				}
+			}
+			reblogs.remove(id);
+		}
+
+		private synchronized JsonObject getQueued(long offset, long limit)
+		{
+			publishDue();
+			return posts(page(queue, offset, limit), queue.size());
+		}
+
+		private synchronized JsonObject getDrafts(long offset, long limit)
+		{
+			return posts(page(drafts, offset, limit), drafts.size());
+		}
+
+		/**
+		 * Pages through the blog's published reblogs, followed by its synthetic posts
+		 */
+		private synchronized JsonObject getPosts(long offset, long limit)
+		{
+			publishDue();
+			long total = published.size() + blogPosts;
+			List<JsonObject> out = new ArrayList<>(page(published, offset, limit));
+			long from = Math.max(0, offset - published.size());
+			long now = System.currentTimeMillis() / 1000;
+			for (long i = from; out.size() < Math.min(limit, PAGE_SIZE) && i < blogPosts; i++)
+			{
+				JsonObject post = generator.json(idBase + i, now - i * 3600);
+				post.addProperty("blog_name", name);
+				out.add(post);
+			}
+			return posts(out, total);
+		}
+
+		/**
+		 * Moves posts from the queue to the published posts, one per publish interval
+		 */
+		private void publishDue()
+		{
+			long now = System.currentTimeMillis();
+			if (queue.isEmpty())
+			{
+				lastPublish = now;
+				return;
+			}
+			long due = publishInterval <= 0 ? queue.size() : (now - lastPublish) / publishInterval;
+			for (long i = 0; i < due && !queue.isEmpty(); i++)
+			{
+				JsonObject post = queue.removeFirst();
+				post.addProperty("state", "published");
+				publish(post);
+			}
+			if (due > 0) lastPublish = publishInterval <= 0 ? now : lastPublish + due * publishInterval;
+		}
+
+		private void publish(JsonObject post)
+		{
+			published.addFirst(post);
+			if (published.size() > MAX_PUBLISHED) reblogs.remove(published.removeLast().get("id").getAsLong());
+		}
+	}
+}
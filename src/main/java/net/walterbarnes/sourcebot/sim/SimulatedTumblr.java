@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.sim;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.tumblr.jumblr.JumblrClient;
+import com.tumblr.jumblr.request.RequestBuilder;
+import com.tumblr.jumblr.responses.ResponseWrapper;
+import net.walterbarnes.sourcebot.tumblr.Tumblr;
+
+import java.util.Map;
+
+/**
+ * A client whose requests are answered by a {@link SimulatedApi} instead of Tumblr, so the bot can be run without
+ * API keys or network access
+ * <p>
+ * Only the request builder is replaced, so calls still go through the rate limiter and caches, and jumblr still
+ * parses the responses
+ */
+public class SimulatedTumblr extends Tumblr
+{
+	private final SimulatedApi api;
+
+	public SimulatedTumblr(SimulatedApi api)
+	{
+		super("simulated", "simulated", "simulated", "simulated");
+		this.api = api;
+		setRequestBuilder(new SimulatedRequestBuilder(this, api));
+	}
+
+	public SimulatedApi getApi()
+	{
+		return api;
+	}
+
+	public SimulationStats getStats()
+	{
+		return api.getStats();
+	}
+
+	private static class SimulatedRequestBuilder extends RequestBuilder
+	{
+		private final Gson gson = new Gson();
+		private final JumblrClient client;
+		private final SimulatedApi api;
+
+		private SimulatedRequestBuilder(JumblrClient client, SimulatedApi api)
+		{
+			super(client);
+			this.client = client;
+			this.api = api;
+		}
+
+		@Override
+		public ResponseWrapper get(String path, Map<String, ?> params)
+		{
+			return wrap(api.call("GET", path, params));
+		}
+
+		@Override
+		public ResponseWrapper post(String path, Map<String, ?> params)
+		{
+			return wrap(api.call("POST", path, params));
+		}
+
+		@Override
+		public ResponseWrapper postMultipart(String path, Map<String, ?> params)
+		{
+			return post(path, params);
+		}
+
+		private ResponseWrapper wrap(JsonElement response)
+		{
+			JsonObject json = new JsonObject();
+			json.add("response", response);
+			ResponseWrapper wrapper = gson.fromJson(json, ResponseWrapper.class);
+			wrapper.setClient(client);
+			return wrapper;
+		}
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.sim;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the calls made to the simulated API, with their outcomes and latencies
+ */
+public class SimulationStats
+{
+	private final ConcurrentMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final AtomicLong reblogs = new AtomicLong();
+	private final long started = System.currentTimeMillis();
+
+	private Endpoint getEndpoint(String name)
+	{
+		Endpoint e = endpoints.get(name);
+		if (e == null)
+		{
+			Endpoint created = new Endpoint();
+			e = endpoints.putIfAbsent(name, created);
+			if (e == null) e = created;
+		}
+		return e;
+	}
+
+	/**
+	 * Records a call to the API
+	 *
+	 * @param endpoint Endpoint called
+	 * @param status   HTTP status the call returned
+	 * @param millis   Time the call took, in milliseconds
+	 */
+	void record(String endpoint, int status, long millis)
+	{
+		Endpoint e = getEndpoint(endpoint);
+		e.calls.incrementAndGet();
+		if (status == 429) e.throttled.incrementAndGet();
+		else if (status >= 400) e.errors.incrementAndGet();
+		e.latency.record(millis);
+		latency.record(millis);
+	}
+
+	void reblogged()
+	{
+		reblogs.incrementAndGet();
+	}
+
+	public long getCalls()
+	{
+		long total = 0;
+		for (Endpoint e : endpoints.values()) total += e.calls.get();
+		return total;
+	}
+
+	public long getReblogs()
+	{
+		return reblogs.get();
+	}
+
+	/**
+	 * @return the latency of all calls
+	 */
+	public LatencyHistogram getLatency()
+	{
+		return latency;
+	}
+
+	/**
+	 * @return a multi-line summary of throughput, calls per reblog and latency, overall and for each endpoint
+	 */
+	public String getReport()
+	{
+		long calls = getCalls();
+		long reblogs = getReblogs();
+		double minutes = Math.max(1, System.currentTimeMillis() - started) / 60000.0;
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%d calls, %d reblogs in %.1f min (%.1f reblogs/min), %s calls per reblog, %s", calls,
+				reblogs, minutes, reblogs / minutes, reblogs == 0 ? "-" : String.format("%.1f", (double) calls / reblogs),
+				latency));
+		for (Map.Entry<String, Endpoint> e : new TreeMap<>(endpoints).entrySet())
+		{
+			Endpoint ep = e.getValue();
+			sb.append(String.format("%n  %s: %d calls, %d errors, %d throttled, %s", e.getKey(), ep.calls.get(),
+					ep.errors.get(), ep.throttled.get(), ep.latency));
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String toString()
+	{
+		return getReport();
+	}
+
+	private static class Endpoint
+	{
+		private final AtomicLong calls = new AtomicLong();
+		private final AtomicLong errors = new AtomicLong();
+		private final AtomicLong throttled = new AtomicLong();
+		private final LatencyHistogram latency = new LatencyHistogram();
+	}
+}
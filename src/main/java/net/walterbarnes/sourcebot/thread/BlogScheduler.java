@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.thread;
+
+import net.walterbarnes.sourcebot.metrics.Metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs blog threads on a bounded pool of workers, keeping track of when each blog is next due to run and making sure
+ * no blog is ever run twice at the same time
+ */
+public class BlogScheduler
+{
+	private static final Logger logger = Logger.getLogger(BlogScheduler.class.getName());
+	private final ExecutorService pool;
+	private final long interval;
+	private final Map<String, Long> nextRun = new ConcurrentHashMap<>();
+	private final Set<String> running = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private final Object lock = new Object();
+
+	/**
+	 * @param workers  Maximum number of blogs to run at the same time
+	 * @param interval Minimum time between the end of one run of a blog and the start of its next, in milliseconds
+	 */
+	public BlogScheduler(int workers, long interval)
+	{
+		this.interval = interval;
+		this.pool = Executors.newFixedThreadPool(workers, new ThreadFactory()
+		{
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				return new Thread(r, "Blog Worker #" + count.incrementAndGet());
+			}
+		});
+	}
+
+	/**
+	 * Submits a blog's task to the pool, unless the blog is already running or isn't due yet
+	 *
+	 * @param url  Blog the task belongs to
+	 * @param task Task to run
+	 * @return true if the task was submitted
+	 */
+	public boolean schedule(final String url, final Runnable task)
+	{
+		Long due = nextRun.get(url);
+		if (due != null && due > System.currentTimeMillis()) return false;
+		if (!running.add(url)) return false;
+
+		try
+		{
+			pool.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					logger.fine("Running Thread for " + url);
+					long start = System.currentTimeMillis();
+					try
+					{
+						task.run();
+					}
+					catch (Throwable t)
+					{
+						logger.log(Level.SEVERE, t.getMessage(), t);
+					}
+					finally
+					{
+						long took = System.currentTimeMillis() - start;
+						logger.info(String.format("[%s] Took %d ms", url, took));
+						Metrics.BLOG_RUNS.labels().observeMillis(took);
+						nextRun.put(url, System.currentTimeMillis() + interval);
+						running.remove(url);
+						synchronized (lock)
+						{
+							lock.notifyAll();
+						}
+					}
+				}
+			});
+		}
+		catch (RejectedExecutionException e)
+		{
+			running.remove(url);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Blocks until a running blog finishes, or the timeout passes, whichever comes first
+	 *
+	 * @param timeout Maximum time to wait, in milliseconds
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public void await(long timeout) throws InterruptedException
+	{
+		synchronized (lock)
+		{
+			lock.wait(timeout);
+		}
+	}
+
+	public boolean isRunning(String url)
+	{
+		return running.contains(url);
+	}
+
+	@SuppressWarnings ("unused")
+	public int getRunningCount()
+	{
+		return running.size();
+	}
+
+	/**
+	 * Stops accepting new tasks, and gives running tasks up to {@code timeout} milliseconds to finish before
+	 * interrupting them
+	 *
+	 * @param timeout Time to wait for running tasks, in milliseconds
+	 */
+	public void shutdown(long timeout)
+	{
+		pool.shutdown();
+		try
+		{
+			if (!pool.awaitTermination(timeout, TimeUnit.MILLISECONDS))
+			{
+				pool.shutdownNow();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+}
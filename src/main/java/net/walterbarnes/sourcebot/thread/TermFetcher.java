@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.thread;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs a blog's searches side by side on a pool shared by all blogs, with a limit on how many of any one blog's
+ * searches run at once so a blog with many terms can't take over the pool
+ * <p>
+ * API calls made by the searches still go through the client's rate limiter, this only bounds concurrency.
+ */
+public class TermFetcher
+{
+	private static final Logger logger = Logger.getLogger(TermFetcher.class.getName());
+	private final ExecutorService pool;
+	private final int parallelism;
+
+	/**
+	 * @param threads     Number of threads shared by all blogs
+	 * @param parallelism Most searches of a single blog to run at once
+	 */
+	public TermFetcher(int threads, int parallelism)
+	{
+		this.parallelism = Math.max(1, parallelism);
+		this.pool = Executors.newFixedThreadPool(threads, new ThreadFactory()
+		{
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "Term Fetch #" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Runs the tasks, at most {@code parallelism} at a time, and waits for all of them to finish
+	 * <p>
+	 * Tasks that throw are logged, and their result left as null, so one failed search doesn't lose the others
+	 *
+	 * @param tasks Tasks to run
+	 * @param <T>   Type of result
+	 * @return the results, in the same order as the tasks
+	 * @throws InterruptedException if interrupted while waiting, any tasks still running are cancelled
+	 */
+	public <T> List<T> fetchAll(List<? extends Callable<T>> tasks) throws InterruptedException
+	{
+		int n = tasks.size();
+		@SuppressWarnings ("unchecked")
+		T[] results = (T[]) new Object[n];
+		if (n == 0) return Arrays.asList(results);
+
+		CompletionService<Integer> done = new ExecutorCompletionService<>(pool);
+		List<Future<Integer>> futures = new ArrayList<>();
+		int next = 0;
+		try
+		{
+			for (; next < Math.min(parallelism, n); next++)
+			{
+				futures.add(done.submit(wrap(tasks.get(next), results, next)));
+			}
+			for (int finished = 0; finished < n; finished++)
+			{
+				done.take();
+				if (next < n)
+				{
+					futures.add(done.submit(wrap(tasks.get(next), results, next)));
+					next++;
+				}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			for (Future<Integer> future : futures) future.cancel(true);
+			throw e;
+		}
+		return Arrays.asList(results);
+	}
+
+	private static <T> Callable<Integer> wrap(final Callable<T> task, final T[] results, final int index)
+	{
+		return new Callable<Integer>()
+		{
+			@Override
+			public Integer call()
+			{
+				try
+				{
+					results[index] = task.call();
+				}
+				catch (Exception e)
+				{
+					logger.log(Level.SEVERE, e.getMessage(), e);
+				}
+				return index;
+			}
+		};
+	}
+
+	public void shutdown()
+	{
+		pool.shutdownNow();
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.trace;
+
+import net.walterbarnes.sourcebot.util.RotatingFileHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the traces of recent runs in memory, and appends every trace to a journal file as a line of JSON
+ * <p>
+ * The journal file is rolled over once it reaches a set size, the same way as the log file
+ */
+public class RunJournal
+{
+	private static final Logger logger = Logger.getLogger(RunJournal.class.getName());
+	private final Deque<RunTrace> recent = new ArrayDeque<>();
+	private final int capacity;
+	private final RotatingFileHandler file;
+
+	/**
+	 * @param capacity Number of traces to keep in memory
+	 * @param file     Journal file, or null to only keep traces in memory
+	 * @param maxBytes Size at which the journal file is rolled over
+	 * @param count    Number of rolled over journal files to keep
+	 */
+	public RunJournal(int capacity, File file, long maxBytes, int count)
+	{
+		this.capacity = Math.max(1, capacity);
+		this.file = file == null ? null : open(file, maxBytes, count);
+	}
+
+	private static RotatingFileHandler open(File file, long maxBytes, int count)
+	{
+		try
+		{
+			if (file.getParentFile() != null && !file.getParentFile().isDirectory() && !file.getParentFile().mkdirs())
+			{
+				throw new IOException("Unable to create " + file.getParentFile());
+			}
+			RotatingFileHandler handler = new RotatingFileHandler(file, maxBytes, count);
+			handler.setFormatter(new Formatter()
+			{
+				@Override
+				public String format(LogRecord record)
+				{
+					return record.getMessage() + "\n";
+				}
+			});
+			return handler;
+		}
+		catch (IOException e)
+		{
+			logger.log(Level.WARNING, "Unable to open run journal " + file + ", only keeping traces in memory", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Adds a finished trace
+	 *
+	 * @param trace Trace to add
+	 */
+	public void add(RunTrace trace)
+	{
+		synchronized (recent)
+		{
+			if (recent.size() == capacity) recent.removeFirst();
+			recent.addLast(trace);
+		}
+		if (file != null)
+		{
+			// Runs finish a few times a minute at most, so each trace is written out straight away
+			LogRecord record = new LogRecord(Level.INFO, trace.toJson().toString());
+			file.publish(record);
+			file.flush();
+		}
+	}
+
+	/**
+	 * Gets the slowest of the traces held in memory
+	 *
+	 * @param n    Number of traces to return
+	 * @param blog Blog to return traces of, or null for all blogs
+	 * @return the traces, slowest first
+	 */
+	public List<RunTrace> getSlowest(int n, String blog)
+	{
+		List<RunTrace> traces;
+		synchronized (recent)
+		{
+			traces = new ArrayList<>(recent);
+		}
+		if (blog != null)
+		{
+			for (Iterator<RunTrace> it = traces.iterator(); it.hasNext(); )
+			{
+				if (!it.next().getBlog().equals(blog)) it.remove();
+			}
+		}
+		Collections.sort(traces, new Comparator<RunTrace>()
+		{
+			@Override
+			public int compare(RunTrace t, RunTrace t1)
+			{
+				return Long.compare(t1.getNanos(), t.getNanos());
+			}
+		});
+		return traces.subList(0, Math.max(0, Math.min(n, traces.size())));
+	}
+
+	/**
+	 * @return the number of traces held in memory
+	 */
+	public int size()
+	{
+		synchronized (recent)
+		{
+			return recent.size();
+		}
+	}
+
+	public void close()
+	{
+		if (file != null) file.close();
+	}
+}
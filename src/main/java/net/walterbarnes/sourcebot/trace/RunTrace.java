@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.trace;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/**
+ * A record of a single run of a blog, made up of timed spans with the API calls and database statements made during
+ * each
+ * <p>
+ * Spans are made active on the thread that starts them until they're closed, so calls made from deep inside a search
+ * can be put against the right span without passing the trace around. Spans may be started from several threads at
+ * once, but each span should only be changed by the thread that started it.
+ */
+public class RunTrace
+{
+	private static final ThreadLocal<Span> active = new ThreadLocal<>();
+
+	private final String blog;
+	private final long time = System.currentTimeMillis();
+	private final long start = System.nanoTime();
+	private final List<Span> spans = new ArrayList<>();
+	// Calls, failed calls and nanoseconds taken for each API method
+	private final Map<String, long[]> calls = new TreeMap<>();
+	private long nanos = -1;
+	private String outcome = "running";
+
+	public RunTrace(String blog)
+	{
+		this.blog = blog;
+	}
+
+	/**
+	 * @return the span active on this thread, or null if there is none
+	 */
+	public static Span active()
+	{
+		return active.get();
+	}
+
+	/**
+	 * Puts an API call against the span active on this thread, if any
+	 *
+	 * @param method Name of the call
+	 * @param status HTTP status of the response
+	 * @param nanos  Time taken by the call
+	 */
+	public static void apiCall(String method, int status, long nanos)
+	{
+		Span span = active.get();
+		if (span == null) return;
+		span.calls++;
+		if (status >= 400) span.errors++;
+		span.callNanos += nanos;
+		span.trace.addCall(method, status, nanos);
+	}
+
+	/**
+	 * Puts a database statement against the span active on this thread, if any
+	 *
+	 * @param nanos Time taken by the statement
+	 */
+	public static void dbCall(long nanos)
+	{
+		Span span = active.get();
+		if (span == null) return;
+		span.statements++;
+		span.dbNanos += nanos;
+	}
+
+	private static double millis(long nanos)
+	{
+		return Math.round(nanos / 1000.0) / 1000.0;
+	}
+
+	private synchronized void addCall(String method, int status, long nanos)
+	{
+		long[] c = calls.get(method);
+		if (c == null) calls.put(method, c = new long[3]);
+		c[0]++;
+		if (status >= 400) c[1]++;
+		c[2] += nanos;
+	}
+
+	/**
+	 * Starts a top level span, and makes it active on this thread until it's closed
+	 *
+	 * @param name Name of the span
+	 * @return the span
+	 */
+	public Span start(String name)
+	{
+		Span span = new Span(this, name, System.nanoTime());
+		synchronized (this)
+		{
+			spans.add(span);
+		}
+		return span.activate();
+	}
+
+	/**
+	 * Marks the run as finished, closing any of its spans still active on this thread, as happens when a run is cut
+	 * short by an exception
+	 *
+	 * @param outcome What the run ended with, e.g. "reblogged" or "idle"
+	 */
+	public synchronized void finish(String outcome)
+	{
+		for (Span span = active.get(); span != null && span.trace == this; span = active.get()) span.close();
+		this.outcome = outcome;
+		this.nanos = System.nanoTime() - start;
+	}
+
+	public String getBlog()
+	{
+		return blog;
+	}
+
+	public long getTime()
+	{
+		return time;
+	}
+
+	/**
+	 * @return the time the run took in nanoseconds, or -1 if it hasn't finished
+	 */
+	public synchronized long getNanos()
+	{
+		return nanos;
+	}
+
+	public synchronized String getOutcome()
+	{
+		return outcome;
+	}
+
+	/**
+	 * @return the trace as a single JSON object, for the journal
+	 */
+	public synchronized JsonObject toJson()
+	{
+		JsonObject json = new JsonObject();
+		json.addProperty("blog", blog);
+		json.addProperty("time", time);
+		json.addProperty("ms", millis(nanos));
+		json.addProperty("outcome", outcome);
+		JsonObject api = new JsonObject();
+		for (Map.Entry<String, long[]> e : calls.entrySet())
+		{
+			JsonObject c = new JsonObject();
+			c.addProperty("calls", e.getValue()[0]);
+			c.addProperty("errors", e.getValue()[1]);
+			c.addProperty("ms", millis(e.getValue()[2]));
+			api.add(e.getKey(), c);
+		}
+		json.add("api", api);
+		JsonArray array = new JsonArray();
+		for (Span span : spans) array.add(span.toJson());
+		json.add("spans", array);
+		return json;
+	}
+
+	/**
+	 * @return the trace as an indented outline, one span per line
+	 */
+	@Override
+	public synchronized String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("[%s] %s, %s in %.1f ms", blog,
+				new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(time)), outcome, millis(nanos)));
+		long n = 0, errors = 0, callNanos = 0;
+		for (long[] c : calls.values())
+		{
+			n += c[0];
+			errors += c[1];
+			callNanos += c[2];
+		}
+		if (n > 0) sb.append(String.format(", %d API calls (%d failed) taking %.1f ms", n, errors, millis(callNanos)));
+		for (Span span : spans) span.append(sb, 1);
+		return sb.toString();
+	}
+
+	/**
+	 * A timed part of a run, closing it ends the span and makes the span that was active before it active again
+	 */
+	public static class Span implements AutoCloseable
+	{
+		private final RunTrace trace;
+		private final String name;
+		private final long start;
+		private final Map<String, Object> values = new LinkedHashMap<>();
+		private final List<Span> children = new ArrayList<>();
+		private long nanos = -1;
+		private Span previous;
+		private boolean activated = false;
+		private int calls, errors, statements;
+		private long callNanos, dbNanos;
+
+		private Span(RunTrace trace, String name, long start)
+		{
+			this.trace = trace;
+			this.name = name;
+			this.start = start;
+		}
+
+		private Span activate()
+		{
+			previous = active.get();
+			activated = true;
+			active.set(this);
+			return this;
+		}
+
+		/**
+		 * Starts a span inside this one, and makes it active on this thread until it's closed
+		 *
+		 * @param name Name of the span
+		 * @return the span
+		 */
+		public Span start(String name)
+		{
+			Span span = new Span(trace, name, System.nanoTime());
+			synchronized (this)
+			{
+				children.add(span);
+			}
+			return span.activate();
+		}
+
+		/**
+		 * Adds an already finished span inside this one, for time that was measured elsewhere
+		 *
+		 * @param name  Name of the span
+		 * @param nanos Time taken
+		 * @return the span
+		 */
+		public Span add(String name, long nanos)
+		{
+			Span span = new Span(trace, name, start);
+			span.nanos = nanos;
+			synchronized (this)
+			{
+				children.add(span);
+			}
+			return span;
+		}
+
+		/**
+		 * Attaches a value to the span, e.g. the number of posts searched
+		 *
+		 * @param key   Name of the value
+		 * @param value Value, a number or string
+		 * @return this span
+		 */
+		public synchronized Span set(String key, Object value)
+		{
+			values.put(key, value);
+			return this;
+		}
+
+		public long getNanos()
+		{
+			return nanos;
+		}
+
+		@Override
+		public void close()
+		{
+			if (nanos < 0) nanos = System.nanoTime() - start;
+			if (activated)
+			{
+				active.set(previous);
+				activated = false;
+			}
+		}
+
+		private synchronized JsonObject toJson()
+		{
+			JsonObject json = new JsonObject();
+			json.addProperty("name", name);
+			json.addProperty("at", millis(start - trace.start));
+			json.addProperty("ms", millis(nanos));
+			if (calls > 0)
+			{
+				json.addProperty("calls", calls);
+				json.addProperty("errors", errors);
+				json.addProperty("call_ms", millis(callNanos));
+			}
+			if (statements > 0)
+			{
+				json.addProperty("statements", statements);
+				json.addProperty("db_ms", millis(dbNanos));
+			}
+			for (Map.Entry<String, Object> e : values.entrySet())
+			{
+				if (e.getValue() instanceof Number) json.addProperty(e.getKey(), (Number) e.getValue());
+				else json.addProperty(e.getKey(), String.valueOf(e.getValue()));
+			}
+			if (!children.isEmpty())
+			{
+				JsonArray array = new JsonArray();
+				for (Span span : children) array.add(span.toJson());
+				json.add("spans", array);
+			}
+			return json;
+		}
+
+		private synchronized void append(StringBuilder sb, int depth)
+		{
+			sb.append('\n');
+			for (int i = 0; i < depth; i++) sb.append("  ");
+			sb.append(name).append(' ').append(nanos < 0 ? "unfinished" : String.format("%.1f ms", millis(nanos)));
+			if (calls > 0) sb.append(String.format(", %d calls (%d failed) %.1f ms", calls, errors, millis(callNanos)));
+			if (statements > 0) sb.append(String.format(", %d statements %.1f ms", statements, millis(dbNanos)));
+			for (Map.Entry<String, Object> e : values.entrySet())
+			{
+				sb.append(", ").append(e.getKey()).append('=').append(e.getValue());
+			}
+			for (Span span : children) span.append(sb, depth + 1);
+		}
+	}
+}
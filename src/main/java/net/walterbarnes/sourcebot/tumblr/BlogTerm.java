@@ -18,186 +18,43 @@
 
 package net.walterbarnes.sourcebot.tumblr;
 
-import com.tumblr.jumblr.exceptions.JumblrException;
-import com.tumblr.jumblr.types.*;
+import com.tumblr.jumblr.types.Post;
 import net.walterbarnes.sourcebot.config.BlogConfig;
-import net.walterbarnes.sourcebot.search.SearchInclusion;
+import net.walterbarnes.sourcebot.search.SampleSizer;
 
-import java.sql.SQLException;
-import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
-public class BlogTerm implements ISearchTerm
+public class BlogTerm extends SearchTerm
 {
-	private static final Logger logger = Logger.getLogger(BlogTerm.class.getName());
-	private static final String type = "blog";
+	private PrefetchingPageIterator pages;
 
-	private final String term;
-	private final Tumblr client;
-	private final BlogConfig blog;
-	private final PostCache cache = new PostCache(120 * 60 * 1000);
-	private int lastPostCount = 0;
-
-	public BlogTerm(String term, Tumblr client, BlogConfig blog)
+	public BlogTerm(String term, Tumblr client, BlogConfig blog, SampleSizer sizer)
 	{
-		this.term = term;
-		this.client = client;
-		this.blog = blog;
+		super(term, client, blog, sizer);
 	}
 
 	@Override
-	public PostCache getCache()
+	protected String getType()
 	{
-		return cache;
+		return "blog";
 	}
 
 	@Override
-	public String getSearchTerm()
+	protected void startSearch()
 	{
-		return type + ":" + term;
+		pages = client.blogPostPages(term, 0);
 	}
 
-	@SuppressWarnings ("Duplicates")
 	@Override
-	public Map<Post, String> getPosts(List<String> blogBlacklist, List<String> tagBlacklist, SearchInclusion rule) throws SQLException
+	protected List<Post> nextPage()
 	{
-		List<Long> postBlacklist = blog.getPosts();
-
-		int postNum = lastPostCount > 0 ? lastPostCount : (rule.getSampleSize() == 0 ? blog.getSampleSize() : rule.getSampleSize());
-		String[] types = rule.getPostType() == null ? blog.getPostType() : rule.getPostType();
-
-		int postCount = 0;
-		int searched = 0;
-
-		long start = System.currentTimeMillis();
-
-		cache.validate();
-
-		Map<Post, String> out = new HashMap<>();
-
-		for (Post p : cache)
-		{
-			out.put(p, rule.getFullTerm());
-		}
-
-		logger.info(String.format("Searching %s %s", type, term));
-		while (out.size() < postNum)
-		{
-			HashMap<String, Object> options = new HashMap<>();
-
-			options.put("offset", postCount);
-
-			List<Post> posts;
-			try
-			{
-				posts = client.blogPosts(term, options);
-			}
-			catch (JumblrException e)
-			{
-				logger.log(Level.SEVERE, e.getMessage(), e);
-				continue;
-			}
-
-			if (posts.size() == 0 || posts.isEmpty()) break;
-
-			loop:
-			for (Post post : posts)
-			{
-				searched++;
-				postCount++;
-				if (!Arrays.asList(types).contains(post.getType().getValue())) continue;
-
-				if (blogBlacklist.contains(post.getBlogName()) || postBlacklist.contains(post.getId())) continue;
-
-				if (rule.getRequiredTags() != null)
-				{
-					for (String rt : rule.getRequiredTags())
-					{
-						if (!post.getTags().contains(rt)) continue loop;
-					}
-				}
-
-				for (String tag : tagBlacklist)
-				{
-					if (rule.getRequiredTags() != null && Arrays.asList(rule.getRequiredTags()).contains(tag))
-					{
-						continue;
-					}
-
-					if (post instanceof TextPost)
-					{
-						TextPost p = (TextPost) post;
-						if (p.getTitle().contains(tag) || p.getBody().contains(tag)) continue loop;
-					}
-					else if (post instanceof PhotoPost)
-					{
-						PhotoPost p = (PhotoPost) post;
-						if (p.getCaption().contains(tag)) continue loop;
-					}
-					else if (post instanceof QuotePost)
-					{
-						QuotePost p = (QuotePost) post;
-						if (p.getSource().contains(tag) || p.getText().contains(tag)) continue loop;
-					}
-					else if (post instanceof LinkPost)
-					{
-						LinkPost p = (LinkPost) post;
-						if (p.getTitle().contains(tag) || p.getDescription().contains(tag)) continue loop;
-					}
-					else if (post instanceof ChatPost)
-					{
-						ChatPost p = (ChatPost) post;
-						if (p.getTitle().contains(tag) || p.getBody().contains(tag)) continue loop;
-						for (Dialogue line : p.getDialogue())
-						{
-							if (line.getPhrase().contains(tag) || line.getLabel().contains(tag) || line.getName().contains(tag))
-							{ continue loop; }
-						}
-					}
-					else if (post instanceof AudioPost)
-					{
-						AudioPost p = (AudioPost) post;
-						if (p.getCaption().contains(tag)) continue loop;
-					}
-					else if (post instanceof VideoPost)
-					{
-						VideoPost p = (VideoPost) post;
-						if (p.getCaption().contains(tag)) continue loop;
-					}
-					else if (post instanceof AnswerPost)
-					{
-						AnswerPost p = (AnswerPost) post;
-						if (p.getAnswer().contains(tag) || p.getQuestion().contains(tag)) continue loop;
-					}
-					else if (post instanceof PostcardPost)
-					{
-						PostcardPost p = (PostcardPost) post;
-						if (p.getBody().contains(tag)) continue loop;
-					}
-
-					if (post.getTags().contains(tag))
-					{
-						if (rule.getRequiredTags() == null || !Arrays.asList(rule.getRequiredTags()).contains(tag))
-						{
-							continue loop;
-						}
-					}
-				}
-
-				if (cache.addPost(post)) out.put(post, rule.getFullTerm());
-			}
-		}
-		long end = System.currentTimeMillis() - start;
-
-		logger.info(String.format("Searched %s %s, selected %d posts out of %d searched (%f%%), took %d ms", type, term,
-				out.size(), searched, ((double) (((float) out.size()) / ((float) searched)) * 100), end));
+		return pages.next();
+	}
 
-		blog.addStat(rule.getType().toString(), term, (int) end, searched, out.size());
-		lastPostCount = out.size();
-		return out;
+	@Override
+	protected void endSearch()
+	{
+		pages.close();
+		pages = null;
 	}
 }
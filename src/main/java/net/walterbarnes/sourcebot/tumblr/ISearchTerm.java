@@ -19,11 +19,12 @@
 package net.walterbarnes.sourcebot.tumblr;
 
 import com.tumblr.jumblr.types.Post;
+import net.walterbarnes.sourcebot.search.ExclusionMatcher;
 import net.walterbarnes.sourcebot.search.SearchInclusion;
 
 import java.sql.SQLException;
-import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public interface ISearchTerm
 {
@@ -32,6 +33,5 @@ public interface ISearchTerm
 	@SuppressWarnings ("unused")
 	String getSearchTerm();
 
-	@SuppressWarnings ("Duplicates")
-	Map<Post, String> getPosts(List<String> blogBlacklist, List<String> tagBlacklist, SearchInclusion rule) throws SQLException;
+	Map<Post, String> getPosts(Set<String> blogBlacklist, ExclusionMatcher tagBlacklist, SearchInclusion rule) throws SQLException;
 }
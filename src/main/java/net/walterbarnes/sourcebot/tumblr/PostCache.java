@@ -20,63 +20,140 @@ package net.walterbarnes.sourcebot.tumblr;
 
 import com.tumblr.jumblr.types.Post;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.*;
 
+/**
+ * Holds posts that have passed a term's filters, for up to {@code cacheLife} milliseconds after they were added
+ * <p>
+ * Posts are indexed by id, expiry is checked in insertion order so it can stop at the first live entry, and when the
+ * cache is full the least recently used post is evicted. All methods are thread safe.
+ */
 public class PostCache implements Iterable<Post>
 {
-	private final Map<Post, Long> posts = new LinkedHashMap<>();
+	public static final int DEFAULT_MAX_SIZE = 10000;
+
 	private final long cacheLife;
+	private final int maxSize;
+	private final ArrayDeque<CachedPost> expiry = new ArrayDeque<>();
+	private final LinkedHashMap<Long, CachedPost> posts;
 
 	public PostCache(long cacheLife)
+	{
+		this(cacheLife, DEFAULT_MAX_SIZE);
+	}
+
+	public PostCache(long cacheLife, final int maxSize)
 	{
 		this.cacheLife = cacheLife;
+		this.maxSize = maxSize;
+		this.posts = new LinkedHashMap<Long, CachedPost>(16, 0.75f, true)
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, CachedPost> eldest)
+			{
+				if (size() > maxSize)
+				{
+					eldest.getValue().removed = true;
+					return true;
+				}
+				return false;
+			}
+		};
 	}
 
-	public boolean addPost(Post post)
+	public synchronized boolean addPost(Post post)
 	{
-		if (posts.containsKey(post)) return false;
-		posts.put(post, System.currentTimeMillis());
+		if (posts.containsKey(post.getId())) return false;
+		CachedPost e = new CachedPost(post, System.currentTimeMillis());
+		posts.put(post.getId(), e);
+		expiry.addLast(e);
 		return true;
 	}
 
+	/**
+	 * Gets a cached post by id, marking it as recently used
+	 *
+	 * @param postId Id of the post
+	 * @return the post, or null if it isn't cached
+	 */
+	@SuppressWarnings ("unused")
+	public synchronized Post get(long postId)
+	{
+		CachedPost e = posts.get(postId);
+		return e == null ? null : e.post;
+	}
+
 	@SuppressWarnings ("UnusedReturnValue")
-	public boolean remove(long postId)
+	public synchronized boolean remove(long postId)
+	{
+		CachedPost e = posts.remove(postId);
+		if (e == null) return false;
+		e.removed = true;
+		return true;
+	}
+
+	/**
+	 * Drops all posts older than the cache life
+	 */
+	public synchronized void validate()
 	{
-		for (Post p : posts.keySet())
+		long cutoff = System.currentTimeMillis() - cacheLife;
+		CachedPost e;
+		while ((e = expiry.peekFirst()) != null)
 		{
-			if (p.getId().equals(postId))
+			if (!e.removed)
 			{
-				posts.remove(p);
-				return true;
+				if (e.time >= cutoff) break;
+				posts.remove(e.post.getId());
 			}
+			expiry.pollFirst();
 		}
-		return false;
-	}
 
-	public void validate()
-	{
-		ArrayList<Post> set = new ArrayList<>(posts.keySet());
-		for (Post key : set)
+		// Entries removed by id or evicted stay in the expiry queue until they reach the front, so compact it if they
+		// start to pile up
+		if (expiry.size() > (posts.size() << 1) + 16)
 		{
-			if (System.currentTimeMillis() - posts.get(key) > cacheLife)
+			Iterator<CachedPost> it = expiry.iterator();
+			while (it.hasNext())
 			{
-				posts.remove(key);
+				if (it.next().removed) it.remove();
 			}
 		}
 	}
 
 	@SuppressWarnings ("unused")
-	public int size()
+	public synchronized int size()
 	{
 		return posts.size();
 	}
 
+	@SuppressWarnings ("unused")
+	public int getMaxSize()
+	{
+		return maxSize;
+	}
+
+	/**
+	 * Iterates over a snapshot of the cached posts, so the cache can be modified while iterating
+	 */
 	@Override
-	public Iterator<Post> iterator()
+	public synchronized Iterator<Post> iterator()
+	{
+		List<Post> out = new ArrayList<>(posts.size());
+		for (CachedPost e : posts.values()) out.add(e.post);
+		return out.iterator();
+	}
+
+	private static class CachedPost
 	{
-		return posts.keySet().iterator();
+		private final Post post;
+		private final long time;
+		private boolean removed = false;
+
+		private CachedPost(Post post, long time)
+		{
+			this.post = post;
+			this.time = time;
+		}
 	}
 }
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.tumblr;
+
+import com.tumblr.jumblr.types.Post;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Pages through a blog's posts by offset, keeping up to {@code depth} pages in flight ahead of the one being read
+ * <p>
+ * Pages are returned in order, a page that failed to load is resubmitted the next time {@link #next()} is called, and
+ * {@link #close()} cancels any pages still in flight. Not thread safe, a single thread should read the pages.
+ */
+public class PrefetchingPageIterator
+{
+	static final int PAGE_SIZE = 20;
+
+	private final Tumblr client;
+	private final String blogName;
+	private final int depth;
+	private final ExecutorService executor;
+	private final ArrayDeque<Page> pages = new ArrayDeque<>();
+	private int nextOffset;
+	private boolean finished = false;
+
+	PrefetchingPageIterator(Tumblr client, String blogName, int offset, int depth, ExecutorService executor)
+	{
+		this.client = client;
+		this.blogName = blogName;
+		this.nextOffset = offset;
+		this.depth = Math.max(1, depth);
+		this.executor = executor;
+	}
+
+	/**
+	 * Gets the next page of posts, waiting for it to arrive if it hasn't already
+	 *
+	 * @return the posts on the page, or an empty list once the end of the blog has been reached
+	 */
+	public List<Post> next()
+	{
+		if (finished) return Collections.emptyList();
+
+		while (pages.size() < depth)
+		{
+			pages.addLast(new Page(nextOffset, submit(nextOffset)));
+			nextOffset += PAGE_SIZE;
+		}
+
+		Page page = pages.peekFirst();
+		List<Post> posts;
+		try
+		{
+			posts = page.future.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			close();
+			return Collections.emptyList();
+		}
+		catch (ExecutionException e)
+		{
+			// Try the page again next time around, and let the caller decide what to do about the failure
+			page.future = submit(page.offset);
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+		pages.pollFirst();
+
+		// A short page means we've hit the end of the blog, so there's no point waiting on the pages after it
+		if (posts.size() < PAGE_SIZE) close();
+		return posts;
+	}
+
+	/**
+	 * Stops fetching pages, cancelling any requests that haven't completed yet
+	 */
+	public void close()
+	{
+		finished = true;
+		for (Page page : pages) page.future.cancel(true);
+		pages.clear();
+	}
+
+	private Future<List<Post>> submit(final int offset)
+	{
+		return executor.submit(new Callable<List<Post>>()
+		{
+			@Override
+			public List<Post> call() throws Exception
+			{
+				Map<String, Object> options = new HashMap<>();
+				options.put("offset", offset);
+				options.put("limit", PAGE_SIZE);
+				return client.blogPosts(blogName, options);
+			}
+		});
+	}
+
+	private static class Page
+	{
+		private final int offset;
+		private Future<List<Post>> future;
+
+		private Page(int offset, Future<List<Post>> future)
+		{
+			this.offset = offset;
+			this.future = future;
+		}
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.tumblr;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps track of how many posts a blog has in its queue or drafts, so we don't have to page through the whole queue
+ * every time we want to know if we should post
+ * <p>
+ * The count is read from the API at most once per reconcile interval, and only up to the size of the buffer, which
+ * is all we need to know. Between reconciles, it's adjusted locally as we post. Runs where the buffer is full cost no
+ * API calls until the next reconcile.
+ */
+public class QueueTracker
+{
+	private static final Logger logger = Logger.getLogger(QueueTracker.class.getName());
+
+	private final Tumblr client;
+	private final String url;
+	private final long reconcileInterval;
+	private String state = null;
+	private int buffer = -1;
+	private int count = -1;
+	private long reconciled = 0;
+	private boolean admin = false;
+
+	/**
+	 * @param client            Client to query the queue with
+	 * @param url               Blog to track
+	 * @param reconcileInterval Time between checks against the API, in milliseconds
+	 */
+	public QueueTracker(Tumblr client, String url, long reconcileInterval)
+	{
+		this.client = client;
+		this.url = url;
+		this.reconcileInterval = reconcileInterval;
+	}
+
+	/**
+	 * Checks whether the blog needs more posts
+	 *
+	 * @param state  Post state the blog is configured for, only "draft" and "queue" are tracked
+	 * @param buffer Number of posts to keep in the queue or drafts
+	 * @return true if there are fewer than {@code buffer} posts in the queue or drafts
+	 */
+	public synchronized boolean needsPosts(String state, int buffer)
+	{
+		if (!("draft".equals(state) || "queue".equals(state))) return false;
+
+		// The count is capped at the buffer it was read with, so it says nothing about a larger buffer
+		if (!state.equals(this.state) || buffer != this.buffer || count < 0 ||
+				System.currentTimeMillis() - reconciled > reconcileInterval)
+		{
+			reconcile(state, buffer);
+		}
+		return count < buffer;
+	}
+
+	private void reconcile(String state, int buffer)
+	{
+		if (state.equals("queue"))
+		{
+			count = client.countQueuedPosts(url, buffer);
+			admin = client.blogInfo(url).isAdmin();
+		}
+		else
+		{
+			count = client.countDrafts(url, buffer);
+		}
+		this.state = state;
+		this.buffer = buffer;
+		reconciled = System.currentTimeMillis();
+		if (logger.isLoggable(Level.FINE)) logger.fine(String.format("[%s] Reconciled %s count: %d", url, state, count));
+	}
+
+	/**
+	 * Records a post added to the queue or drafts
+	 */
+	public synchronized void posted()
+	{
+		if (count >= 0) count++;
+	}
+
+	/**
+	 * Forces the count to be read from the API on the next check
+	 */
+	public synchronized void invalidate()
+	{
+		count = -1;
+	}
+
+	/**
+	 * @return the last known number of posts, capped at the buffer size, or -1 if it isn't known
+	 */
+	public synchronized int getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * @return whether the bot was an admin on the blog as of the last queue reconcile
+	 */
+	public synchronized boolean isAdmin()
+	{
+		return admin;
+	}
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.tumblr;
+
+import com.tumblr.jumblr.exceptions.JumblrException;
+
+import java.util.logging.Logger;
+
+/**
+ * Token bucket limiter shared by every call made through a {@link Tumblr} client, with separate hourly and daily
+ * budgets
+ * <p>
+ * Lower priority calls can't use the last part of each budget, so reblogs can still get through when searches have
+ * used up most of the quota. When the API responds with a 429, all calls are held back for a backoff period which
+ * doubles each time it happens again, and resets after the next successful call.
+ */
+public class RateLimiter
+{
+	private static final Logger logger = Logger.getLogger(RateLimiter.class.getName());
+	private static final long MIN_BACKOFF = 1000;
+	private static final long MAX_BACKOFF = 15 * 60 * 1000;
+
+	private final double hourlyCapacity;
+	private final double dailyCapacity;
+	private double hourlyTokens;
+	private double dailyTokens;
+	private long lastRefill = System.nanoTime();
+	private long blockedUntil = 0;
+	private long backoff = 0;
+	private long calls = 0;
+	private long throttled = 0;
+
+	/**
+	 * @param hourly Number of calls allowed per hour
+	 * @param daily  Number of calls allowed per day
+	 */
+	public RateLimiter(int hourly, int daily)
+	{
+		this.hourlyCapacity = hourlyTokens = hourly;
+		this.dailyCapacity = dailyTokens = daily;
+	}
+
+	/**
+	 * Waits until the call can be made within the budget, then takes a token for it
+	 *
+	 * @param priority Priority of the call
+	 */
+	public synchronized void acquire(Priority priority)
+	{
+		try
+		{
+			while (true)
+			{
+				long now = System.currentTimeMillis();
+				if (now < blockedUntil)
+				{
+					wait(blockedUntil - now);
+					continue;
+				}
+
+				refill();
+				double hourlyFloor = hourlyCapacity * priority.reserve;
+				double dailyFloor = dailyCapacity * priority.reserve;
+				if (hourlyTokens - 1 >= hourlyFloor && dailyTokens - 1 >= dailyFloor)
+				{
+					hourlyTokens--;
+					dailyTokens--;
+					calls++;
+					return;
+				}
+
+				// Work out how long until both buckets have refilled enough for this priority
+				double hourlyWait = Math.max(0, hourlyFloor + 1 - hourlyTokens) * 3600000 / hourlyCapacity;
+				double dailyWait = Math.max(0, dailyFloor + 1 - dailyTokens) * 86400000 / dailyCapacity;
+				wait(Math.max(1, (long) Math.ceil(Math.max(hourlyWait, dailyWait))));
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for API quota", e);
+		}
+	}
+
+	/**
+	 * Records a successful call, resetting the backoff
+	 *
+	 * @param result Result of the call
+	 * @param <T>    Type of the result
+	 * @return {@code result}
+	 */
+	public synchronized <T> T done(T result)
+	{
+		backoff = 0;
+		return result;
+	}
+
+	/**
+	 * Records a failed call, backing off if the API says we're being rate limited
+	 *
+	 * @param e Exception thrown by the call
+	 * @return {@code e}, so it can be rethrown
+	 */
+	public synchronized JumblrException failed(JumblrException e)
+	{
+		if (e.getResponseCode() == 429)
+		{
+			throttled++;
+			backoff = Math.min(MAX_BACKOFF, Math.max(MIN_BACKOFF, backoff * 2));
+			blockedUntil = System.currentTimeMillis() + backoff;
+			logger.warning(String.format("Rate limited by API, backing off for %d ms", backoff));
+		}
+		return e;
+	}
+
+	private void refill()
+	{
+		long now = System.nanoTime();
+		double elapsed = (now - lastRefill) / 1e9;
+		lastRefill = now;
+		hourlyTokens = Math.min(hourlyCapacity, hourlyTokens + elapsed * hourlyCapacity / 3600);
+		dailyTokens = Math.min(dailyCapacity, dailyTokens + elapsed * dailyCapacity / 86400);
+	}
+
+	public synchronized int getHourlyRemaining()
+	{
+		refill();
+		return (int) hourlyTokens;
+	}
+
+	public synchronized int getDailyRemaining()
+	{
+		refill();
+		return (int) dailyTokens;
+	}
+
+	/**
+	 * @return the total number of calls let through
+	 */
+	public synchronized long getCalls()
+	{
+		return calls;
+	}
+
+	/**
+	 * @return the number of times the API has responded with a 429
+	 */
+	public synchronized long getThrottled()
+	{
+		return throttled;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return String.format("%d/%d hourly, %d/%d daily remaining, %d calls, throttled %d times", getHourlyRemaining(),
+				(int) hourlyCapacity, getDailyRemaining(), (int) dailyCapacity, calls, throttled);
+	}
+
+	public enum Priority
+	{
+		/**
+		 * Posting, can use the whole budget
+		 */
+		HIGH(0),
+		/**
+		 * Queue and blog checks
+		 */
+		NORMAL(0.05),
+		/**
+		 * Searches
+		 */
+		LOW(0.15);
+
+		private final double reserve;
+
+		Priority(double reserve)
+		{
+			this.reserve = reserve;
+		}
+	}
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.tumblr;
+
+import com.tumblr.jumblr.exceptions.JumblrException;
+import com.tumblr.jumblr.types.Post;
+import net.walterbarnes.sourcebot.config.BlogConfig;
+import net.walterbarnes.sourcebot.metrics.Metrics;
+import net.walterbarnes.sourcebot.search.ExclusionMatcher;
+import net.walterbarnes.sourcebot.search.SampleSizer;
+import net.walterbarnes.sourcebot.search.SearchInclusion;
+import net.walterbarnes.sourcebot.search.filter.FilterPipeline;
+import net.walterbarnes.sourcebot.trace.RunTrace;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Base for all search terms, handles caching, filtering and stats, leaving subclasses to page through their results
+ * <p>
+ * Searches of the same term never overlap, so subclasses can keep paging state in fields
+ */
+public abstract class SearchTerm implements ISearchTerm
+{
+	/**
+	 * Time posts that passed the filters are kept in the cache for, in milliseconds
+	 */
+	protected static final long CACHE_LIFE = 120 * 60 * 1000;
+	/**
+	 * Number of pages in a row that can fail to load before a search gives up
+	 */
+	private static final int MAX_FAILURES = 3;
+	private static final Logger logger = Logger.getLogger(SearchTerm.class.getName());
+
+	protected final String term;
+	protected final Tumblr client;
+	protected final BlogConfig blog;
+	private final PostCache cache = new PostCache(CACHE_LIFE);
+	private final SampleSizer sizer;
+	private long nextSearch = 0;
+
+	protected SearchTerm(String term, Tumblr client, BlogConfig blog, SampleSizer sizer)
+	{
+		this.term = term;
+		this.client = client;
+		this.blog = blog;
+		this.sizer = sizer;
+	}
+
+	/**
+	 * @return the name of the search type, as used in search terms
+	 */
+	protected abstract String getType();
+
+	/**
+	 * Resets paging so the next call to {@link #nextPage()} returns the first page of results
+	 */
+	protected abstract void startSearch();
+
+	/**
+	 * Fetches the next page of results
+	 *
+	 * @return the posts on the page, or an empty list if there are no more results
+	 */
+	protected abstract List<Post> nextPage();
+
+	/**
+	 * Called once the search has finished, so subclasses can release anything held for paging
+	 */
+	protected void endSearch() {}
+
+	@Override
+	public PostCache getCache()
+	{
+		return cache;
+	}
+
+	@Override
+	public String getSearchTerm()
+	{
+		return getType() + ":" + term;
+	}
+
+	@Override
+	public synchronized Map<Post, String> getPosts(Set<String> blogBlacklist, ExclusionMatcher tagBlacklist, SearchInclusion rule) throws SQLException
+	{
+		blog.refreshSeenPosts();
+
+		int sampleSize = rule.getSampleSize() == 0 ? blog.getSampleSize() : rule.getSampleSize();
+		String[] types = rule.getPostType() == null ? blog.getPostType() : rule.getPostType();
+		FilterPipeline filter = FilterPipeline.forRule(blog, rule, types, blogBlacklist, tagBlacklist);
+
+		int searched = 0;
+		// Only posts accepted by this search, not ones already in the cache, count towards the term's yield
+		int selected = 0;
+
+		long start = System.currentTimeMillis();
+
+		cache.validate();
+
+		Map<Post, String> out = new HashMap<>();
+
+		for (Post p : cache)
+		{
+			out.put(p, rule.getFullTerm());
+		}
+
+		RunTrace.Span span = RunTrace.active();
+		if (span != null) span.set("cached", out.size());
+
+		// Low yield terms are only searched every so often, between searches they just serve what's in the cache
+		if (System.currentTimeMillis() < nextSearch)
+		{
+			if (logger.isLoggable(Level.FINE))
+			{
+				logger.fine(String.format("Skipping search of %s %s, %d cached posts", getType(), term, out.size()));
+			}
+			return out;
+		}
+
+		SampleSizer.Plan plan = sizer.plan(blog.getTermStats(getSearchTerm()), sampleSize);
+		if (logger.isLoggable(Level.FINE)) logger.fine(String.format("Searching %s %s: %s", getType(), term, plan));
+		startSearch();
+		int failures = 0;
+		try
+		{
+			while (out.size() < plan.getPostNum() && searched < plan.getMaxSearched())
+			{
+				List<Post> posts;
+				try
+				{
+					posts = nextPage();
+				}
+				catch (JumblrException e)
+				{
+					logger.log(Level.SEVERE, e.getMessage(), e);
+					// Client errors, like a blog that's been deleted, won't go away by asking again, rate limiting is
+					// already waited out by the client
+					int code = e.getResponseCode();
+					if ((code >= 400 && code < 500 && code != 429) || ++failures >= MAX_FAILURES) break;
+					continue;
+				}
+				failures = 0;
+
+				if (posts.isEmpty()) break;
+
+				for (Post post : posts)
+				{
+					searched++;
+					if (filter.accept(post) && cache.addPost(post))
+					{
+						out.put(post, rule.getFullTerm());
+						selected++;
+					}
+				}
+			}
+		}
+		finally
+		{
+			endSearch();
+		}
+		long end = System.currentTimeMillis() - start;
+
+		if (logger.isLoggable(Level.FINE))
+		{
+			logger.fine(String.format("Searched %s %s, selected %d posts out of %d searched (%f%%), took %d ms", getType(),
+					term, selected, searched, ((double) (((float) selected) / ((float) searched)) * 100), end));
+			logger.fine(String.format("Rejected by %s %s: %s", getType(), term, filter));
+		}
+		if (span != null) span.set("searched", searched).set("selected", selected);
+		filter.record(span);
+		Metrics.TERM_SEARCHES.labels(getType()).observeMillis(end);
+		Metrics.POSTS_SEARCHED.labels(getType()).inc(searched);
+
+		// When the cache alone was enough nothing was searched, and there's nothing to say about the term's yield
+		if (searched > 0) blog.addStat(rule.getType().toString(), term, (int) end, searched, selected);
+		nextSearch = System.currentTimeMillis() + plan.getInterval();
+		return out;
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.tumblr;
+
+/**
+ * What's known about a blog posts are reblogged from, as used by the spam checks
+ */
+public class SourceBlog
+{
+	private final String name;
+	private final boolean found;
+	private final int postCount;
+	private final String title;
+	private final long checked;
+
+	public SourceBlog(String name, boolean found, int postCount, String title, long checked)
+	{
+		this.name = name;
+		this.found = found;
+		this.postCount = postCount;
+		this.title = title;
+		this.checked = checked;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * @return false if the blog doesn't exist, or has been deleted or suspended
+	 */
+	public boolean isFound()
+	{
+		return found;
+	}
+
+	public int getPostCount()
+	{
+		return postCount;
+	}
+
+	public String getTitle()
+	{
+		return title;
+	}
+
+	/**
+	 * @return the time the blog was looked up, in milliseconds
+	 */
+	public long getChecked()
+	{
+		return checked;
+	}
+}
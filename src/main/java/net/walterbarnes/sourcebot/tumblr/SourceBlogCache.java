@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.tumblr;
+
+import com.tumblr.jumblr.exceptions.JumblrException;
+import com.tumblr.jumblr.types.Blog;
+import net.walterbarnes.sourcebot.config.ConnectionPool;
+import net.walterbarnes.sourcebot.config.PooledConnection;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A process wide cache of source blog lookups, shared by all of our blogs
+ * <p>
+ * Blogs that don't exist are cached too, for a shorter time, so a deleted blog showing up in many posts only costs one
+ * call. If given a connection pool, lookups are also kept in the source_blogs table, so they survive restarts.
+ */
+public class SourceBlogCache
+{
+	private static final Logger logger = Logger.getLogger(SourceBlogCache.class.getName());
+	private static final String GET_BLOG = "SELECT found, post_count, title, checked FROM source_blogs WHERE name = ?";
+	private static final String UPDATE_BLOG = "UPDATE source_blogs SET found = ?, post_count = ?, title = ?, checked = ? WHERE name = ?";
+	private static final String INSERT_BLOG = "INSERT INTO source_blogs (found, post_count, title, checked, name) VALUES (?, ?, ?, ?, ?)";
+
+	private final Tumblr client;
+	private final ConnectionPool pool;
+	private final long ttl;
+	private final long negativeTtl;
+	private final Map<String, SourceBlog> blogs;
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * @param client      Client to look blogs up with
+	 * @param pool        Pool to persist lookups with, or null to only keep them in memory
+	 * @param ttl         Time lookups of existing blogs are kept for, in milliseconds
+	 * @param negativeTtl Time lookups of missing blogs are kept for, in milliseconds
+	 * @param maxSize     Maximum number of blogs kept in memory
+	 */
+	public SourceBlogCache(Tumblr client, ConnectionPool pool, long ttl, long negativeTtl, final int maxSize)
+	{
+		this.client = client;
+		this.pool = pool;
+		this.ttl = ttl;
+		this.negativeTtl = negativeTtl;
+		this.blogs = new LinkedHashMap<String, SourceBlog>(16, 0.75f, true)
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, SourceBlog> eldest)
+			{
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Looks up a blog, from the cache if it's been looked up recently
+	 *
+	 * @param name Name of the blog
+	 * @return what's known about the blog
+	 * @throws JumblrException if the lookup fails for any reason other than the blog not existing
+	 */
+	public SourceBlog get(String name)
+	{
+		String key = name.toLowerCase(Locale.ROOT);
+		synchronized (blogs)
+		{
+			SourceBlog blog = blogs.get(key);
+			if (blog != null && !isExpired(blog))
+			{
+				hits++;
+				return blog;
+			}
+			misses++;
+		}
+
+		SourceBlog blog = load(key);
+		if (blog == null || isExpired(blog))
+		{
+			blog = fetch(key);
+			save(blog);
+		}
+		synchronized (blogs)
+		{
+			blogs.put(key, blog);
+		}
+		return blog;
+	}
+
+	private boolean isExpired(SourceBlog blog)
+	{
+		return System.currentTimeMillis() - blog.getChecked() > (blog.isFound() ? ttl : negativeTtl);
+	}
+
+	private SourceBlog fetch(String name)
+	{
+		try
+		{
+			Blog info = client.blogInfo(name);
+			int posts = info.getPostCount() == null ? 0 : info.getPostCount();
+			return new SourceBlog(name, true, posts, info.getTitle(), System.currentTimeMillis());
+		}
+		catch (JumblrException e)
+		{
+			if (e.getResponseCode() != 404) throw e;
+			return new SourceBlog(name, false, 0, null, System.currentTimeMillis());
+		}
+	}
+
+	private SourceBlog load(String name)
+	{
+		if (pool == null) return null;
+		try (PooledConnection conn = pool.borrow())
+		{
+			PreparedStatement getBlog = conn.prepare(GET_BLOG);
+			getBlog.setString(1, name);
+			ResultSet rs = getBlog.executeQuery();
+			if (!rs.next()) return null;
+			return new SourceBlog(name, rs.getBoolean("found"), rs.getInt("post_count"), rs.getString("title"),
+					rs.getTimestamp("checked").getTime());
+		}
+		catch (SQLException e)
+		{
+			logger.log(Level.WARNING, "Unable to load source blog " + name, e);
+			return null;
+		}
+	}
+
+	private void save(SourceBlog blog)
+	{
+		if (pool == null) return;
+		try (PooledConnection conn = pool.borrow())
+		{
+			PreparedStatement update = conn.prepare(UPDATE_BLOG);
+			setParams(update, blog);
+			if (update.executeUpdate() == 0)
+			{
+				PreparedStatement insert = conn.prepare(INSERT_BLOG);
+				setParams(insert, blog);
+				insert.executeUpdate();
+			}
+		}
+		catch (SQLException e)
+		{
+			logger.log(Level.WARNING, "Unable to save source blog " + blog.getName(), e);
+		}
+	}
+
+	private static void setParams(PreparedStatement ps, SourceBlog blog) throws SQLException
+	{
+		ps.setBoolean(1, blog.isFound());
+		ps.setInt(2, blog.getPostCount());
+		ps.setString(3, blog.getTitle());
+		ps.setTimestamp(4, new Timestamp(blog.getChecked()));
+		ps.setString(5, blog.getName());
+	}
+
+	public int size()
+	{
+		synchronized (blogs)
+		{
+			return blogs.size();
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		synchronized (blogs)
+		{
+			long total = hits + misses;
+			return String.format("%d blogs cached, %d hits, %d misses (%.1f%% hit rate)", blogs.size(), hits, misses,
+					total == 0 ? 0 : hits * 100.0 / total);
+		}
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.tumblr;
+
+import com.tumblr.jumblr.types.Post;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A process wide cache of raw tag search pages, shared by every blog searching the same tag
+ * <p>
+ * Pages are keyed by tag and the {@code before} timestamp they were fetched with. Searches start from the beginning of
+ * the current time window rather than the current time, so every blog searching a tag within the same window asks for
+ * the same first page, and as each following page is requested from the last timestamp of the one before, the rest of
+ * the pages line up too. Blogs apply their own filters to the shared pages.
+ * <p>
+ * Only one thread fetches any given page, others asking for it at the same time wait for its result.
+ */
+public class TagSearchCache
+{
+	private final Tumblr client;
+	private final long window;
+	private final long ttl;
+	private final Map<PageKey, CachedPage> pages;
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * @param client   Client to fetch pages with
+	 * @param window   Length of the window searches start from, in seconds, values below 1 are treated as 1
+	 * @param ttl      Time pages are kept for, in milliseconds
+	 * @param maxPages Maximum number of pages to keep, the least recently used are dropped past this
+	 */
+	public TagSearchCache(Tumblr client, long window, long ttl, final int maxPages)
+	{
+		this.client = client;
+		this.window = Math.max(1, window);
+		this.ttl = ttl;
+		this.pages = new LinkedHashMap<PageKey, CachedPage>(16, 0.75f, true)
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<PageKey, CachedPage> eldest)
+			{
+				return size() > maxPages;
+			}
+		};
+	}
+
+	/**
+	 * @return the timestamp searches should start from, the start of the current window, in seconds
+	 */
+	public long getWindowStart()
+	{
+		long now = System.currentTimeMillis() / 1000;
+		return now - (now % window);
+	}
+
+	/**
+	 * Gets a page of posts tagged with the tag, from the cache if it's been fetched recently
+	 *
+	 * @param tag    Tag to search
+	 * @param before Timestamp to get posts from before, in seconds
+	 * @return the posts, in the order returned by the API, the list must not be modified
+	 */
+	public List<Post> getPage(final String tag, final long before)
+	{
+		PageKey key = new PageKey(tag, before);
+		CachedPage page;
+		boolean owner = false;
+		synchronized (pages)
+		{
+			page = pages.get(key);
+			if (page == null || page.isExpired())
+			{
+				page = new CachedPage(new FutureTask<>(new Callable<List<Post>>()
+				{
+					@Override
+					public List<Post> call()
+					{
+						Map<String, Object> options = new HashMap<>();
+						options.put("before", before);
+						return Collections.unmodifiableList(client.tagged(tag, options));
+					}
+				}));
+				pages.put(key, page);
+				owner = true;
+				misses++;
+			}
+			else
+			{
+				hits++;
+			}
+		}
+
+		// Fetch outside the lock, so searches for other pages aren't held up
+		if (owner) page.task.run();
+
+		try
+		{
+			return page.task.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for tag page", e);
+		}
+		catch (ExecutionException e)
+		{
+			// Don't cache failures, the next request for the page tries again
+			synchronized (pages)
+			{
+				if (pages.get(key) == page) pages.remove(key);
+			}
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	public int size()
+	{
+		synchronized (pages)
+		{
+			return pages.size();
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		synchronized (pages)
+		{
+			long total = hits + misses;
+			return String.format("%d pages cached, %d hits, %d misses (%.1f%% hit rate)", pages.size(), hits, misses,
+					total == 0 ? 0 : hits * 100.0 / total);
+		}
+	}
+
+	private static class PageKey
+	{
+		private final String tag;
+		private final long before;
+
+		private PageKey(String tag, long before)
+		{
+			this.tag = tag;
+			this.before = before;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (this == o) return true;
+			if (!(o instanceof PageKey)) return false;
+			PageKey other = (PageKey) o;
+			return before == other.before && tag.equals(other.tag);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return 31 * tag.hashCode() + (int) (before ^ (before >>> 32));
+		}
+	}
+
+	private class CachedPage
+	{
+		private final FutureTask<List<Post>> task;
+		private final long time = System.currentTimeMillis();
+
+		private CachedPage(FutureTask<List<Post>> task)
+		{
+			this.task = task;
+		}
+
+		private boolean isExpired()
+		{
+			return System.currentTimeMillis() - time > ttl;
+		}
+	}
+}
@@ -18,186 +18,125 @@
 
 package net.walterbarnes.sourcebot.tumblr;
 
-import com.tumblr.jumblr.exceptions.JumblrException;
-import com.tumblr.jumblr.types.*;
+import com.tumblr.jumblr.types.Post;
 import net.walterbarnes.sourcebot.config.BlogConfig;
-import net.walterbarnes.sourcebot.search.SearchInclusion;
+import net.walterbarnes.sourcebot.search.SampleSizer;
+import net.walterbarnes.sourcebot.search.SearchWatermark;
 
-import java.sql.SQLException;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 
-public class TagTerm implements ISearchTerm
+/**
+ * Searches a tag, newest posts first
+ * <p>
+ * The range of timestamps already processed is kept as a watermark, so each search only fetches posts newer than the
+ * newest one processed, then carries on paging from below the oldest one. Posts inside the range that passed the
+ * filters are still in the cache, so nothing is lost by skipping them, and once the range is older than the cache it's
+ * dropped and the next search starts over from the top.
+ * <p>
+ * The watermark is only kept in memory alongside the cache, as after a restart the posts it skipped over would no
+ * longer be cached.
+ */
+public class TagTerm extends SearchTerm
 {
 	private static final Logger logger = Logger.getLogger(TagTerm.class.getName());
-	private static final String type = "tag";
 
-	private final String term;
-	private final Tumblr client;
-	private final BlogConfig blog;
-	private final PostCache cache = new PostCache(120 * 60 * 1000);
-	private int lastPostCount = 0;
+	private SearchWatermark mark;
+	private boolean aboveMark;
+	private long lastTime;
+	private long runNewest;
+	private long runOldest;
 
-	public TagTerm(String term, Tumblr client, BlogConfig blog)
+	public TagTerm(String term, Tumblr client, BlogConfig blog, SampleSizer sizer)
 	{
-		this.term = term;
-		this.client = client;
-		this.blog = blog;
+		super(term, client, blog, sizer);
 	}
 
 	@Override
-	public PostCache getCache()
+	protected String getType()
 	{
-		return cache;
+		return "tag";
 	}
 
 	@Override
-	public String getSearchTerm()
+	protected void startSearch()
 	{
-		return type + ":" + term;
+		if (mark != null && System.currentTimeMillis() - mark.getStarted() > CACHE_LIFE)
+		{
+			logger.fine("Watermark for tag " + term + " has expired, searching from the top");
+			mark = null;
+		}
+
+		// Start from the shared window rather than now, so pages line up with other blogs searching the same tag
+		lastTime = client.getTagCache().getWindowStart();
+		aboveMark = mark != null;
+		runNewest = 0;
+		runOldest = Long.MAX_VALUE;
 	}
 
-	@SuppressWarnings ("Duplicates")
 	@Override
-	public Map<Post, String> getPosts(List<String> blogBlacklist, List<String> tagBlacklist, SearchInclusion rule) throws SQLException
+	protected List<Post> nextPage()
 	{
-		List<Long> postBlacklist = blog.getPosts();
-
-		int postNum = lastPostCount > 0 ? lastPostCount : (rule.getSampleSize() == 0 ? blog.getSampleSize() : rule.getSampleSize());
-		String[] types = rule.getPostType() == null ? blog.getPostType() : rule.getPostType();
-
-		long lastTime = System.currentTimeMillis() / 1000;
-		int searched = 0;
-
-		long start = System.currentTimeMillis();
-
-		cache.validate();
-
-		Map<Post, String> out = new HashMap<>();
-
-		for (Post p : cache)
+		while (true)
 		{
-			out.put(p, rule.getFullTerm());
-		}
-
-		logger.info(String.format("Searching %s %s", type, term));
-		while (out.size() < postNum)
-		{
-			HashMap<String, Object> options = new HashMap<>();
-
-			options.put("before", lastTime);
+			List<Post> posts = client.getTagCache().getPage(term, lastTime);
+			if (!aboveMark)
+			{
+				track(posts);
+				if (!posts.isEmpty()) lastTime = posts.get(posts.size() - 1).getTimestamp();
+				return posts;
+			}
 
-			List<Post> posts;
-			try
+			// Above the watermark, only keep posts newer than anything processed before, and skip down below the
+			// oldest processed post as soon as we reach it
+			List<Post> fresh = new ArrayList<>();
+			for (Post post : posts)
 			{
-				posts = client.tagged(term, options);
+				if (post.getTimestamp() > mark.getNewest()) fresh.add(post);
 			}
-			catch (JumblrException e)
+			track(fresh);
+			if (fresh.size() < posts.size() || posts.isEmpty())
 			{
-				logger.log(Level.SEVERE, e.getMessage(), e);
-				continue;
+				aboveMark = false;
+				lastTime = mark.getOldest();
+				if (fresh.isEmpty()) continue;
 			}
-
-			if (posts.size() == 0 || posts.isEmpty()) break;
-
-			loop:
-			for (Post post : posts)
+			else
 			{
-				searched++;
-				lastTime = post.getTimestamp();
-				if (!Arrays.asList(types).contains(post.getType().getValue())) continue;
-
-				if (blogBlacklist.contains(post.getBlogName()) || postBlacklist.contains(post.getId())) continue;
-
-				if (rule.getRequiredTags() != null)
-				{
-					for (String rt : rule.getRequiredTags())
-					{
-						if (!post.getTags().contains(rt)) continue loop;
-					}
-				}
-
-				for (String tag : tagBlacklist)
-				{
-					if (rule.getRequiredTags() != null && Arrays.asList(rule.getRequiredTags()).contains(tag))
-					{
-						continue;
-					}
-
-					if (post instanceof TextPost)
-					{
-						TextPost p = (TextPost) post;
-						if (p.getTitle().contains(tag) || p.getBody().contains(tag)) continue loop;
-					}
-					else if (post instanceof PhotoPost)
-					{
-						PhotoPost p = (PhotoPost) post;
-						if (p.getCaption().contains(tag)) continue loop;
-					}
-					else if (post instanceof QuotePost)
-					{
-						QuotePost p = (QuotePost) post;
-						if (p.getSource().contains(tag) || p.getText().contains(tag)) continue loop;
-					}
-					else if (post instanceof LinkPost)
-					{
-						LinkPost p = (LinkPost) post;
-						if (p.getTitle().contains(tag) || p.getDescription().contains(tag)) continue loop;
-					}
-					else if (post instanceof ChatPost)
-					{
-						ChatPost p = (ChatPost) post;
-						if (p.getTitle().contains(tag) || p.getBody().contains(tag)) continue loop;
-						for (Dialogue line : p.getDialogue())
-						{
-							if (line.getPhrase().contains(tag) || line.getLabel().contains(tag) || line.getName().contains(tag))
-							{ continue loop; }
-						}
-					}
-					else if (post instanceof AudioPost)
-					{
-						AudioPost p = (AudioPost) post;
-						if (p.getCaption().contains(tag)) continue loop;
-					}
-					else if (post instanceof VideoPost)
-					{
-						VideoPost p = (VideoPost) post;
-						if (p.getCaption().contains(tag)) continue loop;
-					}
-					else if (post instanceof AnswerPost)
-					{
-						AnswerPost p = (AnswerPost) post;
-						if (p.getAnswer().contains(tag) || p.getQuestion().contains(tag)) continue loop;
-					}
-					else if (post instanceof PostcardPost)
-					{
-						PostcardPost p = (PostcardPost) post;
-						if (p.getBody().contains(tag)) continue loop;
-					}
-
-					if (post.getTags().contains(tag))
-					{
-						if (rule.getRequiredTags() == null || !Arrays.asList(rule.getRequiredTags()).contains(tag))
-						{
-							continue loop;
-						}
-					}
-				}
-
-				if (cache.addPost(post)) out.put(post, rule.getFullTerm());
+				lastTime = posts.get(posts.size() - 1).getTimestamp();
 			}
+			return fresh;
 		}
-		long end = System.currentTimeMillis() - start;
+	}
 
-		logger.info(String.format("Searched %s %s, selected %d posts out of %d searched (%f%%), took %d ms", type, term,
-				out.size(), searched, ((double) (((float) out.size()) / ((float) searched)) * 100), end));
+	@Override
+	protected void endSearch()
+	{
+		// Nothing was fetched, cached posts were enough
+		if (runOldest == Long.MAX_VALUE) return;
 
-		blog.addStat(rule.getType().toString(), term, (int) end, searched, out.size());
-		lastPostCount = out.size();
-		return out;
+		if (mark == null)
+		{
+			mark = new SearchWatermark(runNewest, runOldest, System.currentTimeMillis());
+		}
+		else if (!aboveMark)
+		{
+			// Paged all the way down to the old range, so everything between the two has been processed
+			mark = new SearchWatermark(Math.max(runNewest, mark.getNewest()), Math.min(runOldest, mark.getOldest()),
+					mark.getStarted());
+		}
+		// Otherwise the search stopped before reaching the old range, and the posts between what was fetched and the
+		// old range haven't been seen, so keep the old mark and search from the top again next time
+	}
+
+	private void track(List<Post> posts)
+	{
+		for (Post post : posts)
+		{
+			long time = post.getTimestamp();
+			if (time > runNewest) runNewest = time;
+			if (time < runOldest) runOldest = time;
+		}
 	}
 }
@@ -19,19 +19,35 @@
 package net.walterbarnes.sourcebot.tumblr;
 
 import com.tumblr.jumblr.JumblrClient;
+import com.tumblr.jumblr.exceptions.JumblrException;
 import com.tumblr.jumblr.types.AnswerPost;
+import com.tumblr.jumblr.types.Blog;
 import com.tumblr.jumblr.types.Post;
+import com.tumblr.jumblr.types.User;
+import net.walterbarnes.sourcebot.metrics.Metrics;
+import net.walterbarnes.sourcebot.trace.RunTrace;
+import net.walterbarnes.sourcebot.tumblr.RateLimiter.Priority;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 @SuppressWarnings ({"WeakerAccess", "unused"})
 public class Tumblr extends JumblrClient
 {
 	private static final Logger logger = Logger.getLogger(Tumblr.class.getName());
+	private int prefetchDepth = 4;
+	private int prefetchThreads = 8;
+	private ExecutorService prefetchPool;
+	private RateLimiter limiter = new RateLimiter(1000, 5000);
+	private TagSearchCache tagCache = new TagSearchCache(this, 300, 10 * 60 * 1000, 2000);
+	private SourceBlogCache blogCache = new SourceBlogCache(this, null, 24 * 60 * 60 * 1000, 60 * 60 * 1000, 10000);
 
 	public Tumblr(String consumerKey, String consumerSecret, String token, String tokenSecret)
 	{
@@ -39,6 +55,248 @@ public class Tumblr extends JumblrClient
 		setToken(token, tokenSecret);
 	}
 
+	public RateLimiter getRateLimiter()
+	{
+		return limiter;
+	}
+
+	public void setRateLimiter(RateLimiter limiter)
+	{
+		this.limiter = limiter;
+	}
+
+	public TagSearchCache getTagCache()
+	{
+		return tagCache;
+	}
+
+	public void setTagCache(TagSearchCache tagCache)
+	{
+		this.tagCache = tagCache;
+	}
+
+	public SourceBlogCache getBlogCache()
+	{
+		return blogCache;
+	}
+
+	public void setBlogCache(SourceBlogCache blogCache)
+	{
+		this.blogCache = blogCache;
+	}
+
+	@Override
+	public User user()
+	{
+		limiter.acquire(Priority.NORMAL);
+		long start = System.nanoTime();
+		try
+		{
+			return done("user", start, super.user());
+		}
+		catch (JumblrException e)
+		{
+			throw failed("user", start, e);
+		}
+	}
+
+	@Override
+	public List<Post> tagged(String tag, Map<String, ?> options)
+	{
+		limiter.acquire(Priority.LOW);
+		long start = System.nanoTime();
+		try
+		{
+			return done("tagged", start, super.tagged(tag, options));
+		}
+		catch (JumblrException e)
+		{
+			throw failed("tagged", start, e);
+		}
+	}
+
+	@Override
+	public Blog blogInfo(String blogName)
+	{
+		limiter.acquire(Priority.NORMAL);
+		long start = System.nanoTime();
+		try
+		{
+			return done("blog_info", start, super.blogInfo(blogName));
+		}
+		catch (JumblrException e)
+		{
+			throw failed("blog_info", start, e);
+		}
+	}
+
+	@Override
+	public List<Post> blogPosts(String blogName, Map<String, ?> options)
+	{
+		limiter.acquire(Priority.LOW);
+		long start = System.nanoTime();
+		try
+		{
+			return done("blog_posts", start, super.blogPosts(blogName, options));
+		}
+		catch (JumblrException e)
+		{
+			throw failed("blog_posts", start, e);
+		}
+	}
+
+	@Override
+	public List<Post> blogQueuedPosts(String blogName, Map<String, ?> options)
+	{
+		limiter.acquire(Priority.NORMAL);
+		long start = System.nanoTime();
+		try
+		{
+			return done("blog_queue", start, super.blogQueuedPosts(blogName, options));
+		}
+		catch (JumblrException e)
+		{
+			throw failed("blog_queue", start, e);
+		}
+	}
+
+	@Override
+	public List<Post> blogDraftPosts(String blogName, Map<String, ?> options)
+	{
+		limiter.acquire(Priority.NORMAL);
+		long start = System.nanoTime();
+		try
+		{
+			return done("blog_drafts", start, super.blogDraftPosts(blogName, options));
+		}
+		catch (JumblrException e)
+		{
+			throw failed("blog_drafts", start, e);
+		}
+	}
+
+	@Override
+	public List<Post> blogSubmissions(String blogName, Map<String, ?> options)
+	{
+		limiter.acquire(Priority.NORMAL);
+		long start = System.nanoTime();
+		try
+		{
+			return done("blog_submissions", start, super.blogSubmissions(blogName, options));
+		}
+		catch (JumblrException e)
+		{
+			throw failed("blog_submissions", start, e);
+		}
+	}
+
+	@Override
+	public Post postReblog(String blogName, Long postId, String reblogKey, Map<String, ?> options)
+	{
+		limiter.acquire(Priority.HIGH);
+		long start = System.nanoTime();
+		try
+		{
+			return done("reblog", start, super.postReblog(blogName, postId, reblogKey, options));
+		}
+		catch (JumblrException e)
+		{
+			throw failed("reblog", start, e);
+		}
+	}
+
+	@Override
+	public void postDelete(String blogName, Long postId)
+	{
+		limiter.acquire(Priority.HIGH);
+		long start = System.nanoTime();
+		try
+		{
+			super.postDelete(blogName, postId);
+			done("delete", start, null);
+		}
+		catch (JumblrException e)
+		{
+			throw failed("delete", start, e);
+		}
+	}
+
+	/**
+	 * Records a successful call with the rate limiter, in the call metrics and against the active run trace
+	 *
+	 * @param method Name of the call
+	 * @param start  Time the call started, from {@link System#nanoTime()}
+	 * @param result Result of the call
+	 * @param <T>    Type of the result
+	 * @return {@code result}
+	 */
+	private <T> T done(String method, long start, T result)
+	{
+		long nanos = System.nanoTime() - start;
+		Metrics.API_CALLS.labels(method, "200").observeNanos(nanos);
+		RunTrace.apiCall(method, 200, nanos);
+		return limiter.done(result);
+	}
+
+	/**
+	 * Records a failed call with the rate limiter, in the call metrics and against the active run trace
+	 *
+	 * @param method Name of the call
+	 * @param start  Time the call started, from {@link System#nanoTime()}
+	 * @param e      Exception thrown by the call
+	 * @return {@code e}, so it can be rethrown
+	 */
+	private JumblrException failed(String method, long start, JumblrException e)
+	{
+		long nanos = System.nanoTime() - start;
+		Metrics.API_CALLS.labels(method, Integer.toString(e.getResponseCode())).observeNanos(nanos);
+		RunTrace.apiCall(method, e.getResponseCode(), nanos);
+		return limiter.failed(e);
+	}
+
+	/**
+	 * Sets how far ahead {@link #blogPostPages} fetches pages, must be called before the first call to it for the
+	 * thread count to take effect
+	 *
+	 * @param depth   Number of pages to keep in flight per iterator
+	 * @param threads Number of threads shared by all iterators
+	 */
+	public void setPrefetch(int depth, int threads)
+	{
+		this.prefetchDepth = depth;
+		this.prefetchThreads = threads;
+	}
+
+	/**
+	 * Pages through a blog's posts, fetching the next few pages in the background while the current one is used
+	 *
+	 * @param blogName Blog to retrieve posts from
+	 * @param offset   Offset to start at
+	 * @return an iterator over the pages of the blog's posts
+	 */
+	public PrefetchingPageIterator blogPostPages(String blogName, int offset)
+	{
+		synchronized (this)
+		{
+			if (prefetchPool == null)
+			{
+				prefetchPool = Executors.newFixedThreadPool(prefetchThreads, new ThreadFactory()
+				{
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable r)
+					{
+						Thread t = new Thread(r, "Page Prefetch #" + count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+			}
+		}
+		return new PrefetchingPageIterator(this, blogName, offset, prefetchDepth, prefetchPool);
+	}
+
 	public List<AnswerPost> getAsks(String blogName)
 	{
 		int offset = 0;
@@ -76,6 +334,31 @@ public class Tumblr extends JumblrClient
 		return out;
 	}
 
+	/**
+	 * Counts the posts in a blog's queue, stopping once {@code max} is reached
+	 * <p>
+	 * Checks for a post at offset {@code max - 1} first, so a full queue only costs one call
+	 *
+	 * @param blogName Blog to count the queue of
+	 * @param max      Maximum count we care about
+	 * @return the number of queued posts, or {@code max} if there are at least that many
+	 */
+	public int countQueuedPosts(String blogName, int max)
+	{
+		if (max <= 0) return 0;
+
+		Map<String, Object> params = new HashMap<>();
+		params.put("offset", String.valueOf(max - 1));
+		params.put("limit", "1");
+		if (blogQueuedPosts(blogName, params).size() > 0) return max;
+
+		int count = 0;
+		List<Post> queue;
+		while (count < max && (queue = blogQueuedPosts(blogName, count)).size() > 0)
+			count += queue.size();
+		return Math.min(count, max);
+	}
+
 	public List<Post> blogQueuedPosts(String blogName, int offset)
 	{
 		Map<String, Object> params = new HashMap<>();
@@ -97,6 +380,26 @@ public class Tumblr extends JumblrClient
 		return out;
 	}
 
+	/**
+	 * Counts the posts in a blog's drafts, stopping once {@code max} is reached
+	 *
+	 * @param blogName Blog to count the drafts of
+	 * @param max      Maximum count we care about
+	 * @return the number of drafts, or {@code max} if there are at least that many
+	 */
+	public int countDrafts(String blogName, int max)
+	{
+		long before = 0;
+		int count = 0;
+		List<Post> drafts;
+		while (count < max && (drafts = blogDraftPosts(blogName, before)).size() > 0)
+		{
+			count += drafts.size();
+			before = drafts.get(drafts.size() - 1).getId();
+		}
+		return Math.min(count, max);
+	}
+
 	/**
 	 * Retrieves a blogs drafts id {@code id}
 	 *
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Hands log records to a background thread, which formats and writes them through the target handlers, so logging
+ * never waits on formatting or disk writes
+ * <p>
+ * Records are held in a bounded ring. When it's full, records below WARNING are dropped and counted, and a warning
+ * saying how many were dropped is written once there's room again. WARNING and above wait for room instead, as they're
+ * rare and shouldn't be lost.
+ * <p>
+ * Records are written from another thread, so formatters see the logger name but not the calling class and method.
+ */
+public class AsyncLogHandler extends Handler
+{
+	private final Handler[] targets;
+	private final LogRecord[] ring;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+	private final Condition drained = lock.newCondition();
+	private final Thread writer;
+	private int head = 0;
+	private int size = 0;
+	private long dropped = 0;
+	private boolean writing = false;
+	private volatile boolean closed = false;
+
+	/**
+	 * @param capacity Maximum number of records waiting to be written
+	 * @param targets  Handlers to write records through
+	 */
+	public AsyncLogHandler(int capacity, Handler... targets)
+	{
+		this.targets = targets.clone();
+		this.ring = new LogRecord[capacity];
+
+		// Let through anything at least one target would write
+		Level level = Level.OFF;
+		for (Handler target : targets)
+		{
+			if (target.getLevel().intValue() < level.intValue()) level = target.getLevel();
+		}
+		setLevel(level);
+
+		writer = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				write();
+			}
+		}, "Log Writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	@Override
+	public void publish(LogRecord record)
+	{
+		if (closed || !isLoggable(record)) return;
+		if (Thread.currentThread() == writer)
+		{
+			// Something a target called has logged, queueing it could wait on the writer forever
+			dispatch(record);
+			return;
+		}
+		boolean important = record.getLevel().intValue() >= Level.WARNING.intValue();
+		lock.lock();
+		try
+		{
+			while (size == ring.length)
+			{
+				if (!important || closed)
+				{
+					dropped++;
+					return;
+				}
+				notFull.awaitUninterruptibly();
+			}
+			ring[(head + size) % ring.length] = record;
+			size++;
+			notEmpty.signal();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	private void write()
+	{
+		LogRecord[] batch = new LogRecord[ring.length];
+		while (true)
+		{
+			int count;
+			long lost;
+			lock.lock();
+			try
+			{
+				while (size == 0)
+				{
+					writing = false;
+					drained.signalAll();
+					if (closed) return;
+					notEmpty.awaitUninterruptibly();
+				}
+				writing = true;
+				count = size;
+				for (int i = 0; i < count; i++)
+				{
+					batch[i] = ring[head];
+					ring[head] = null;
+					head = (head + 1) % ring.length;
+				}
+				size = 0;
+				lost = dropped;
+				dropped = 0;
+				notFull.signalAll();
+			}
+			finally
+			{
+				lock.unlock();
+			}
+
+			for (int i = 0; i < count; i++)
+			{
+				dispatch(batch[i]);
+				batch[i] = null;
+			}
+			if (lost > 0)
+			{
+				LogRecord record = new LogRecord(Level.WARNING, String.format("Log buffer full, dropped %d records", lost));
+				record.setLoggerName(AsyncLogHandler.class.getName());
+				dispatch(record);
+			}
+			for (Handler target : targets) target.flush();
+		}
+	}
+
+	private void dispatch(LogRecord record)
+	{
+		for (Handler target : targets)
+		{
+			try
+			{
+				target.publish(record);
+			}
+			catch (RuntimeException e)
+			{
+				reportError(null, e, ErrorManager.WRITE_FAILURE);
+			}
+		}
+	}
+
+	/**
+	 * Waits up to a second for the records logged so far to be written
+	 */
+	@Override
+	public void flush()
+	{
+		lock.lock();
+		try
+		{
+			long wait = TimeUnit.SECONDS.toNanos(1);
+			while ((size > 0 || writing) && wait > 0 && writer.isAlive())
+			{
+				wait = drained.awaitNanos(wait);
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Writes out the records waiting in the ring, then closes the targets
+	 */
+	@Override
+	public void close()
+	{
+		lock.lock();
+		try
+		{
+			closed = true;
+			notEmpty.signalAll();
+			notFull.signalAll();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		try
+		{
+			writer.join(5000);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		for (Handler target : targets) target.close();
+	}
+}
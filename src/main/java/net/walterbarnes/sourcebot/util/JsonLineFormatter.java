@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.util;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.logging.Formatter;
+import java.util.logging.LogRecord;
+
+/**
+ * Formats each record as a single line of JSON, with the time in UTC, level, logger, thread id, message and any
+ * stack trace
+ * <p>
+ * Not thread safe, which is fine behind an {@link AsyncLogHandler} as records are only formatted on its writer thread
+ */
+public class JsonLineFormatter extends Formatter
+{
+	private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+	private final StringBuilder sb = new StringBuilder();
+	private final Date date = new Date();
+
+	public JsonLineFormatter()
+	{
+		dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+	}
+
+	private static void appendString(StringBuilder sb, String s)
+	{
+		sb.append('"');
+		for (int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			switch (c)
+			{
+				case '"':
+					sb.append("\\\"");
+					break;
+				case '\\':
+					sb.append("\\\\");
+					break;
+				case '\n':
+					sb.append("\\n");
+					break;
+				case '\r':
+					sb.append("\\r");
+					break;
+				case '\t':
+					sb.append("\\t");
+					break;
+				default:
+					if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+					else sb.append(c);
+			}
+		}
+		sb.append('"');
+	}
+
+	@Override
+	public String format(LogRecord record)
+	{
+		sb.setLength(0);
+		date.setTime(record.getMillis());
+		sb.append("{\"time\":\"").append(dateFormat.format(date)).append('"');
+		sb.append(",\"level\":\"").append(record.getLevel().getName()).append('"');
+		sb.append(",\"logger\":");
+		appendString(sb, record.getLoggerName() == null ? "" : record.getLoggerName());
+		sb.append(",\"thread\":").append(record.getThreadID());
+		sb.append(",\"msg\":");
+		String message = formatMessage(record);
+		appendString(sb, message == null ? "" : message);
+		if (record.getThrown() != null)
+		{
+			StringWriter sw = new StringWriter();
+			try (PrintWriter pw = new PrintWriter(sw))
+			{
+				record.getThrown().printStackTrace(pw);
+			}
+			sb.append(",\"error\":");
+			appendString(sb, sw.toString());
+		}
+		sb.append("}\n");
+		return sb.toString();
+	}
+}
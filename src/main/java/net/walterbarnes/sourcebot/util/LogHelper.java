@@ -18,24 +18,105 @@
 
 package net.walterbarnes.sourcebot.util;
 
+import com.google.gson.JsonObject;
+import net.walterbarnes.sourcebot.config.Configuration;
+
 import java.io.File;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.logging.FileHandler;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-import java.util.logging.SimpleFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.*;
 
+/**
+ * Sets up logging, with records written to the console and a rotating log file by a background thread
+ */
 public class LogHelper
 {
-	private static final String logFileName = new SimpleDateFormat("yyyy-MM-dd_HH:mm:ss").format(new Date()) +
-			"-SourceBot.log";
+	private static final String logFileName = "SourceBot.log";
 	private static final String logsDir = "logs";
 	private static final Logger logger = Logger.getLogger(LogHelper.class.getName());
+	// The log manager only holds weak references to loggers, so loggers given a level are kept here to hold on to it
+	private static final List<Logger> configured = new ArrayList<>();
+	private static AsyncLogHandler handler;
 
+	/**
+	 * Installs the default handlers, before the config has been read
+	 */
 	public static void init()
 	{
+		Logger.getLogger("").setLevel(Level.INFO);
+		install(Level.INFO, "json", 10 * 1024 * 1024, 5, 8192);
+	}
+
+	/**
+	 * Reinstalls the handlers and sets logger levels from the logging config
+	 *
+	 * @param conf Logging category of the config
+	 */
+	public static synchronized void configure(Configuration conf)
+	{
+		Level level = parseLevel(conf.getString("level", "INFO"), Level.INFO);
+		Level consoleLevel = parseLevel(conf.getString("console_level", "INFO"), Level.INFO);
+		String format = conf.getString("format", "json");
+		long maxBytes = conf.getInt("max_size", 10) * 1024L * 1024L;
+		int files = conf.getInt("files", 5);
+		int buffer = conf.getInt("buffer", 8192);
+		// Levels for individual loggers or packages, e.g. "net.walterbarnes.sourcebot.tumblr": "FINE"
+		Configuration levels = conf.getCategory("levels", new JsonObject());
+
+		Logger.getLogger("").setLevel(level);
+		for (Logger l : configured) l.setLevel(null);
+		configured.clear();
+		for (String name : levels.getKeys())
+		{
+			Logger l = Logger.getLogger(name);
+			l.setLevel(parseLevel(levels.getString(name, "INFO"), null));
+			configured.add(l);
+		}
+		install(consoleLevel, format, maxBytes, files, buffer);
+	}
+
+	/**
+	 * Writes out any records still waiting, and closes the log file
+	 */
+	public static synchronized void shutdown()
+	{
+		if (handler != null)
+		{
+			Logger.getLogger("").removeHandler(handler);
+			handler.close();
+			handler = null;
+		}
+	}
+
+	private static Level parseLevel(String name, Level def)
+	{
+		try
+		{
+			return Level.parse(name.toUpperCase());
+		}
+		catch (IllegalArgumentException e)
+		{
+			logger.warning("Unknown log level '" + name + "'");
+			return def;
+		}
+	}
+
+	private static synchronized void install(Level consoleLevel, String format, long maxBytes, int files, int buffer)
+	{
+		Logger root = Logger.getLogger("");
+		for (Handler h : root.getHandlers())
+		{
+			// Replaces the console handler from the default logging config, as well as our own
+			if (h instanceof ConsoleHandler) root.removeHandler(h);
+		}
+		shutdown();
+
+		List<Handler> targets = new ArrayList<>();
+		ConsoleHandler console = new ConsoleHandler();
+		console.setLevel(consoleLevel);
+		console.setFormatter(new SimpleFormatter());
+		targets.add(console);
 		try
 		{
 			File dir = new File(logsDir);
@@ -43,20 +124,20 @@ public class LogHelper
 			{
 				if (!dir.mkdirs())
 				{
-					throw new RuntimeException("Unable to create log dir");
+					throw new IOException("Unable to create log dir");
 				}
 			}
-			FileHandler fileTxt = new FileHandler("logs/" + logFileName);
-			SimpleFormatter formatterTxt = new SimpleFormatter();
-			logger.setLevel(Level.ALL);
-
-			fileTxt.setFormatter(formatterTxt);
-			logger.addHandler(fileTxt);
+			RotatingFileHandler file = new RotatingFileHandler(new File(dir, logFileName), maxBytes, files);
+			file.setLevel(Level.ALL);
+			file.setFormatter(format.equals("text") ? new SimpleFormatter() : new JsonLineFormatter());
+			targets.add(file);
 		}
 		catch (IOException e)
 		{
 			e.printStackTrace();
-			System.exit(0);
 		}
+
+		handler = new AsyncLogHandler(buffer, targets.toArray(new Handler[targets.size()]));
+		root.addHandler(handler);
 	}
 }
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.util;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressed hash set of primitive longs, avoiding the boxing and per-entry overhead of a {@code Set<Long>}
+ * <p>
+ * Not thread safe, callers must synchronize access themselves
+ */
+public class LongHashSet
+{
+	private static final long EMPTY = 0;
+	private static final float LOAD_FACTOR = 0.5f;
+
+	private long[] table;
+	private int size;
+	private boolean hasEmptyKey;
+
+	public LongHashSet()
+	{
+		this(16);
+	}
+
+	public LongHashSet(int expected)
+	{
+		int cap = 16;
+		while (cap * LOAD_FACTOR < expected) cap <<= 1;
+		table = new long[cap];
+	}
+
+	private static int mix(long key)
+	{
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/**
+	 * Adds a value to the set
+	 *
+	 * @param key Value to add
+	 * @return true if the value was not already present
+	 */
+	public boolean add(long key)
+	{
+		if (key == EMPTY)
+		{
+			if (hasEmptyKey) return false;
+			hasEmptyKey = true;
+			size++;
+			return true;
+		}
+		if ((size + 1) > table.length * LOAD_FACTOR) rehash(table.length << 1);
+
+		int mask = table.length - 1;
+		int i = mix(key) & mask;
+		while (table[i] != EMPTY)
+		{
+			if (table[i] == key) return false;
+			i = (i + 1) & mask;
+		}
+		table[i] = key;
+		size++;
+		return true;
+	}
+
+	public boolean contains(long key)
+	{
+		if (key == EMPTY) return hasEmptyKey;
+
+		int mask = table.length - 1;
+		int i = mix(key) & mask;
+		long k;
+		while ((k = table[i]) != EMPTY)
+		{
+			if (k == key) return true;
+			i = (i + 1) & mask;
+		}
+		return false;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public void clear()
+	{
+		Arrays.fill(table, EMPTY);
+		hasEmptyKey = false;
+		size = 0;
+	}
+
+	private void rehash(int newCap)
+	{
+		long[] old = table;
+		table = new long[newCap];
+		int mask = newCap - 1;
+		for (long key : old)
+		{
+			if (key == EMPTY) continue;
+			int i = mix(key) & mask;
+			while (table[i] != EMPTY) i = (i + 1) & mask;
+			table[i] = key;
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2016.
+ * This file is part of SourceBot.
+ *
+ * SourceBot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SourceBot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SourceBot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.walterbarnes.sourcebot.util;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+/**
+ * Writes records to a file, rolling it over to {@code name.1}, {@code name.2} and so on once it reaches a set size
+ * <p>
+ * Writes are buffered until {@link #flush()} is called, so it's meant to sit behind an {@link AsyncLogHandler}, which
+ * flushes after each batch of records
+ */
+public class RotatingFileHandler extends Handler
+{
+	private final File file;
+	private final long maxBytes;
+	private final int count;
+	private Writer writer;
+	private long written;
+
+	/**
+	 * @param file     File to write to, appended to if it already exists
+	 * @param maxBytes Size at which the file is rolled over
+	 * @param count    Number of rolled over files to keep
+	 * @throws IOException if the file can't be opened
+	 */
+	public RotatingFileHandler(File file, long maxBytes, int count) throws IOException
+	{
+		this.file = file;
+		this.maxBytes = maxBytes;
+		this.count = count;
+		open();
+	}
+
+	private void open() throws IOException
+	{
+		written = file.length();
+		writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8), 64 * 1024);
+	}
+
+	@SuppressWarnings ("ResultOfMethodCallIgnored")
+	private void rotate() throws IOException
+	{
+		writer.close();
+		new File(file.getPath() + "." + count).delete();
+		for (int i = count - 1; i >= 1; i--)
+		{
+			File f = new File(file.getPath() + "." + i);
+			if (f.exists()) f.renameTo(new File(file.getPath() + "." + (i + 1)));
+		}
+		if (count > 0) file.renameTo(new File(file.getPath() + ".1"));
+		else file.delete();
+		open();
+	}
+
+	@Override
+	public synchronized void publish(LogRecord record)
+	{
+		if (writer == null || !isLoggable(record)) return;
+		String line;
+		try
+		{
+			line = getFormatter().format(record);
+		}
+		catch (RuntimeException e)
+		{
+			reportError(null, e, ErrorManager.FORMAT_FAILURE);
+			return;
+		}
+		try
+		{
+			if (written > 0 && written + line.length() > maxBytes) rotate();
+			writer.write(line);
+			// Close enough for deciding when to roll over, without encoding every line twice
+			written += line.length();
+		}
+		catch (IOException e)
+		{
+			reportError(null, e, ErrorManager.WRITE_FAILURE);
+		}
+	}
+
+	@Override
+	public synchronized void flush()
+	{
+		if (writer == null) return;
+		try
+		{
+			writer.flush();
+		}
+		catch (IOException e)
+		{
+			reportError(null, e, ErrorManager.FLUSH_FAILURE);
+		}
+	}
+
+	@Override
+	public synchronized void close()
+	{
+		if (writer == null) return;
+		try
+		{
+			writer.close();
+		}
+		catch (IOException e)
+		{
+			reportError(null, e, ErrorManager.CLOSE_FAILURE);
+		}
+		writer = null;
+	}
+}